@@ -0,0 +1,47 @@
+/*
+ * Copyright 2019 Michel Kremer (kremi151)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package lu.kremi151.jenkins.wolagent.benchmarks;
+
+import lu.kremi151.jenkins.wolagent.util.HostHelper;
+import org.openjdk.jmh.annotations.*;
+
+import java.net.UnknownHostException;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class HostHelperBenchmark {
+
+    @Param({"192.168.0.17", "256.1.1.1", "build-agent.example.com", "fe80::1%1"})
+    public String host;
+
+    @Benchmark
+    public boolean isIpAddress() {
+        return HostHelper.isIpAddress(host);
+    }
+
+    /**
+     * Includes the route lookup, the host name itself is served from the resolution cache.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public String guessBroadcastIpLoopback() throws UnknownHostException {
+        return HostHelper.tryGuessBroadcastIp("127.0.0.1");
+    }
+
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2019 Michel Kremer (kremi151)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package lu.kremi151.jenkins.wolagent.benchmarks;
+
+import hudson.model.Descriptor;
+import hudson.slaves.ComputerLauncher;
+import lu.kremi151.jenkins.wolagent.host.ReflectiveHostExtractor;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Host and port inference through the method handles of {@link ReflectiveHostExtractor}, compared to a plain call.
+ * The extension registry of {@code HostHelper} needs a running Jenkins, so the extractor is called directly.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class HostInferenceBenchmark {
+
+    private ReflectiveHostExtractor extractor;
+    private BenchmarkLauncher launcher;
+
+    @Setup
+    public void setup() {
+        extractor = new BenchmarkLauncherHostExtractor();
+        launcher = new BenchmarkLauncher("build-agent.example.com", 22);
+        if (!extractor.isApplicable(BenchmarkLauncher.class)) {
+            throw new IllegalStateException("Extractor does not apply to " + BenchmarkLauncher.class);
+        }
+    }
+
+    @Benchmark
+    public void reflective(Blackhole blackhole) throws ReflectiveOperationException {
+        blackhole.consume(extractor.getHost(launcher));
+        blackhole.consume(extractor.getPort(launcher));
+    }
+
+    @Benchmark
+    public void direct(Blackhole blackhole) {
+        blackhole.consume(launcher.getHost());
+        blackhole.consume(launcher.getPort());
+    }
+
+    public static class BenchmarkLauncher extends ComputerLauncher {
+
+        // Not registered as an extension, there is no Jenkins to look it up from
+        private static final Descriptor<ComputerLauncher> DESCRIPTOR = new Descriptor<ComputerLauncher>(BenchmarkLauncher.class) {
+        };
+
+        private final String host;
+        private final int port;
+
+        public BenchmarkLauncher(String host, int port) {
+            this.host = host;
+            this.port = port;
+        }
+
+        public String getHost() {
+            return host;
+        }
+
+        public int getPort() {
+            return port;
+        }
+
+        @Override
+        public Descriptor<ComputerLauncher> getDescriptor() {
+            return DESCRIPTOR;
+        }
+
+    }
+
+    private static final class BenchmarkLauncherHostExtractor extends ReflectiveHostExtractor {
+
+        private BenchmarkLauncherHostExtractor() {
+            super(BenchmarkLauncher.class.getName(), "getHost", "getPort");
+        }
+
+    }
+
+}
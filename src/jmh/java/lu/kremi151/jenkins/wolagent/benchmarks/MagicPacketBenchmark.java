@@ -0,0 +1,58 @@
+/*
+ * Copyright 2019 Michel Kremer (kremi151)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package lu.kremi151.jenkins.wolagent.benchmarks;
+
+import lu.kremi151.jenkins.wolagent.util.MagicPacket;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing a MAC address and building the payload, done once per node configuration change.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class MagicPacketBenchmark {
+
+    @Param({"01:23:45:67:89:ab", "01-23-45-67-89-AB"})
+    public String macAddress;
+
+    private MagicPacket packet;
+
+    @Setup
+    public void setup() {
+        packet = MagicPacket.parse(macAddress);
+    }
+
+    @Benchmark
+    public MagicPacket parse() {
+        return MagicPacket.parse(macAddress);
+    }
+
+    @Benchmark
+    public boolean validateInvalid() {
+        return MagicPacket.isValidMacAddress("01:23:45:67:89:zz");
+    }
+
+    @Benchmark
+    public ByteBuffer payload() {
+        return packet.getPayload();
+    }
+
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2019 Michel Kremer (kremi151)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package lu.kremi151.jenkins.wolagent.benchmarks;
+
+import lu.kremi151.jenkins.wolagent.util.MagicPacket;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Send throughput of a pre-encoded magic packet to a loopback receiver, which drains its socket
+ * after every send so the benchmark does not measure drops of a full receive buffer.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class MagicPacketSendBenchmark {
+
+    private MagicPacket packet;
+    private DatagramChannel sender;
+    private DatagramChannel receiver;
+    private InetSocketAddress destination;
+    private ByteBuffer receiveBuffer;
+
+    @Setup
+    public void setup() throws IOException {
+        packet = MagicPacket.parse("01:23:45:67:89:ab");
+        receiver = DatagramChannel.open();
+        receiver.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        receiver.configureBlocking(false);
+        destination = (InetSocketAddress) receiver.getLocalAddress();
+        sender = DatagramChannel.open();
+        receiveBuffer = ByteBuffer.allocateDirect(256);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        sender.close();
+        receiver.close();
+    }
+
+    @Benchmark
+    public int send() throws IOException {
+        packet.sendTo(sender, destination);
+        receiveBuffer.clear();
+        receiver.receive(receiveBuffer);
+        return receiveBuffer.position();
+    }
+
+}
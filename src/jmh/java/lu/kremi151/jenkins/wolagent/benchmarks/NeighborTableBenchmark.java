@@ -0,0 +1,78 @@
+/*
+ * Copyright 2019 Michel Kremer (kremi151)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package lu.kremi151.jenkins.wolagent.benchmarks;
+
+import lu.kremi151.jenkins.wolagent.reachability.NeighborTable;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses a generated {@code /proc/net/arp} table and answers the state of every node from it,
+ * the work done by one refresh of the neighbor table.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class NeighborTableBenchmark {
+
+    @Param({"16", "256", "1024"})
+    public int entries;
+
+    private String table;
+    private String[] macAddresses;
+    private InetAddress[] addresses;
+
+    @Setup
+    public void setUp() throws UnknownHostException {
+        final StringBuilder sb = new StringBuilder("IP address       HW type     Flags       HW address            Mask     Device\n");
+        macAddresses = new String[entries];
+        addresses = new InetAddress[entries];
+        for (int i = 0; i < entries; i++) {
+            final String ip = "10.0." + (i >> 8) + "." + (i & 0xff);
+            macAddresses[i] = String.format("52-54-00-00-%02X-%02X", i >> 8, i & 0xff);
+            addresses[i] = InetAddress.getByName(ip);
+            // Every fourth node is asleep and unresolved
+            final boolean complete = i % 4 != 0;
+            sb.append(String.format("%-16s 0x1         %-11s %-21s *        eth0\n",
+                    ip, complete ? "0x2" : "0x0", complete ? macAddresses[i].replace('-', ':').toLowerCase() : "00:00:00:00:00:00"));
+        }
+        table = sb.toString();
+    }
+
+    @Benchmark
+    public NeighborTable.Snapshot parse() throws IOException {
+        return NeighborTable.parse(new StringReader(table));
+    }
+
+    @Benchmark
+    public int parseAndLookupAll() throws IOException {
+        final NeighborTable.Snapshot snapshot = NeighborTable.parse(new StringReader(table));
+        int down = 0;
+        for (int i = 0; i < entries; i++) {
+            if (snapshot.getState(macAddresses[i], addresses[i]) == NeighborTable.State.DOWN) {
+                down++;
+            }
+        }
+        return down;
+    }
+
+}
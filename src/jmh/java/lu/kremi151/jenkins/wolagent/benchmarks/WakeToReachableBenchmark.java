@@ -0,0 +1,147 @@
+/*
+ * Copyright 2019 Michel Kremer (kremi151)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package lu.kremi151.jenkins.wolagent.benchmarks;
+
+import hudson.model.TaskListener;
+import lu.kremi151.jenkins.wolagent.reachability.ReachabilityPoller;
+import lu.kremi151.jenkins.wolagent.reachability.ReadinessProbe;
+import lu.kremi151.jenkins.wolagent.simulator.SleepingHostSimulator;
+import lu.kremi151.jenkins.wolagent.simulator.SleepingHostSimulator.SimulatedHost;
+import lu.kremi151.jenkins.wolagent.util.MagicPacket;
+import lu.kremi151.jenkins.wolagent.wake.WakeLimiter;
+import lu.kremi151.jenkins.wolagent.wake.WakeRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Wake of a fleet of simulated hosts through the wake registry and limiter: sending the magic packets, the hosts
+ * booting, and the shared reachability poller noticing it through TCP connects before the wake timeout.
+ * Each invocation measures the time until all hosts are reachable or timed out, the auxiliary counter
+ * reports the number of timeouts.
+ * <p>
+ * The launcher itself needs a running Jenkins, it is covered by {@code WOLLauncherTest} with the same simulator.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 2)
+@Measurement(iterations = 10)
+public class WakeToReachableBenchmark {
+
+    private static final int PING_INTERVAL = 20;
+    private static final int CONNECT_TIMEOUT = 250;
+    private static final long WAKE_TIMEOUT = 2000L;
+
+    @Param({"10", "100", "500"})
+    public int hostCount;
+
+    @Param({"100"})
+    public long bootDelayMillis;
+
+    /**
+     * Every n-th host never boots, {@code 0} disables broken hosts.
+     */
+    @Param({"0", "20"})
+    public int brokenEvery;
+
+    private SleepingHostSimulator simulator;
+    private final List<SimulatedHost> hosts = new ArrayList<>();
+    private final List<MagicPacket> packets = new ArrayList<>();
+    private DatagramChannel sender;
+    private InetSocketAddress wakeAddress;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        simulator = new SleepingHostSimulator(bootDelayMillis);
+        for (int i = 0; i < hostCount; i++) {
+            final String mac = String.format(Locale.ROOT, "02:00:00:%02x:%02x:%02x", (i >> 16) & 0xff, (i >> 8) & 0xff, i & 0xff);
+            final boolean bootable = brokenEvery <= 0 || (i + 1) % brokenEvery != 0;
+            hosts.add(simulator.addHost(mac, bootable));
+            packets.add(MagicPacket.parse(mac));
+        }
+        sender = DatagramChannel.open();
+        wakeAddress = simulator.getWakeAddress();
+    }
+
+    @Setup(Level.Invocation)
+    public void powerOff() throws IOException {
+        for (SimulatedHost host : hosts) {
+            host.sleep();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        sender.close();
+        simulator.close();
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counters {
+
+        public long timeouts;
+
+    }
+
+    @Benchmark
+    public void wakeFleet(Counters counters) throws IOException {
+        final ReachabilityPoller poller = ReachabilityPoller.get();
+        final CompletableFuture<?>[] reachable = new CompletableFuture<?>[hosts.size()];
+        for (int i = 0; i < hosts.size(); i++) {
+            final SimulatedHost host = hosts.get(i);
+            final MagicPacket packet = packets.get(i);
+            reachable[i] = WakeRegistry.get().joinOrStart(host.getMacAddress(), TaskListener.NULL, () ->
+                    WakeLimiter.get().acquire(null).thenCompose(permit -> {
+                        try {
+                            packet.sendTo(sender, wakeAddress);
+                        } catch (IOException e) {
+                            permit.release();
+                            throw new CompletionException(e);
+                        }
+                        return poller.awaitReachable(
+                                host.getMacAddress(),
+                                ReadinessProbe.TCP.createCheck(simulator.getAddress(), host.getPort(), CONNECT_TIMEOUT),
+                                PING_INTERVAL,
+                                WAKE_TIMEOUT
+                        ).whenComplete((v, t) -> permit.release());
+                    })
+            );
+        }
+        for (CompletableFuture<?> future : reachable) {
+            try {
+                future.join();
+            } catch (RuntimeException e) {
+                if (!(e.getCause() instanceof TimeoutException)) {
+                    throw e;
+                }
+                counters.timeouts++;
+            }
+        }
+    }
+
+}
@@ -17,7 +17,24 @@
 package lu.kremi151.jenkins.wolagent;
 
 import hudson.Plugin;
+import lu.kremi151.jenkins.wolagent.reachability.BeaconListener;
+import lu.kremi151.jenkins.wolagent.reachability.PresenceTracker;
+import lu.kremi151.jenkins.wolagent.reachability.ReachabilityPoller;
+import lu.kremi151.jenkins.wolagent.util.WakeOnLAN;
+import lu.kremi151.jenkins.wolagent.wake.FleetWaker;
+import lu.kremi151.jenkins.wolagent.wake.WakeExecutor;
 
 public class WOLAgentPlugin extends Plugin {
 
+    @Override
+    public void stop() throws Exception {
+        ReachabilityPoller.shutdown();
+        PresenceTracker.shutdown();
+        BeaconListener.get().close();
+        WakeOnLAN.close();
+        FleetWaker.shutdown();
+        WakeExecutor.shutdown();
+        super.stop();
+    }
+
 }
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2019 Michel Kremer (kremi151)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package lu.kremi151.jenkins.wolagent;
+
+import hudson.Extension;
+import hudson.util.FormValidation;
+import hudson.util.Secret;
+import jenkins.model.GlobalConfiguration;
+import net.sf.json.JSONObject;
+import org.apache.commons.lang.StringUtils;
+import lu.kremi151.jenkins.wolagent.host.ResolutionCache;
+import lu.kremi151.jenkins.wolagent.reachability.BeaconListener;
+import lu.kremi151.jenkins.wolagent.wake.WakeGroup;
+import org.jenkinsci.Symbol;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.StaplerRequest;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+@Extension
+@Symbol("wolAgent")
+public class WOLGlobalConfiguration extends GlobalConfiguration {
+
+    private boolean learnQueueSchedule;
+    private int preWakeLeadMinutes = 10;
+
+    private int dnsCacheTtl = ResolutionCache.DEFAULT_TTL_SECONDS;
+    private int dnsNegativeCacheTtl = ResolutionCache.DEFAULT_NEGATIVE_TTL_SECONDS;
+
+    private List<WakeGroup> wakeGroups;
+
+    private boolean trackPresence = true;
+    private boolean useNeighborTable;
+
+    private int beaconPort;
+    private Secret beaconSecret;
+
+    public WOLGlobalConfiguration() {
+        load();
+        applySettings();
+    }
+
+    @Nonnull
+    public static WOLGlobalConfiguration get() {
+        WOLGlobalConfiguration configuration = GlobalConfiguration.all().get(WOLGlobalConfiguration.class);
+        if (configuration == null) {
+            throw new IllegalStateException("WOLGlobalConfiguration is not registered");
+        }
+        return configuration;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return Messages.WOLGlobalConfiguration_DisplayName();
+    }
+
+    @Override
+    public boolean configure(StaplerRequest req, JSONObject json) throws FormException {
+        // Binding leaves lists alone if the form submitted none, e.g. after removing the last wake group
+        wakeGroups = null;
+        req.bindJSON(this, json);
+        applySettings();
+        save();
+        return true;
+    }
+
+    /**
+     * Hands the settings to the components using them, once all of them are bound.
+     */
+    private void applySettings() {
+        ResolutionCache.get().setTtl(dnsCacheTtl, dnsNegativeCacheTtl);
+        BeaconListener.get().configure(beaconPort, beaconSecret);
+    }
+
+    public boolean isLearnQueueSchedule() {
+        return learnQueueSchedule;
+    }
+
+    @DataBoundSetter
+    public void setLearnQueueSchedule(boolean learnQueueSchedule) {
+        this.learnQueueSchedule = learnQueueSchedule;
+    }
+
+    public int getPreWakeLeadMinutes() {
+        return preWakeLeadMinutes;
+    }
+
+    @DataBoundSetter
+    public void setPreWakeLeadMinutes(int preWakeLeadMinutes) {
+        this.preWakeLeadMinutes = Math.max(0, preWakeLeadMinutes);
+    }
+
+    public int getDnsCacheTtl() {
+        return dnsCacheTtl;
+    }
+
+    @DataBoundSetter
+    public void setDnsCacheTtl(int dnsCacheTtl) {
+        this.dnsCacheTtl = Math.max(0, dnsCacheTtl);
+    }
+
+    public int getDnsNegativeCacheTtl() {
+        return dnsNegativeCacheTtl;
+    }
+
+    @DataBoundSetter
+    public void setDnsNegativeCacheTtl(int dnsNegativeCacheTtl) {
+        this.dnsNegativeCacheTtl = Math.max(0, dnsNegativeCacheTtl);
+    }
+
+    @Nonnull
+    public List<WakeGroup> getWakeGroups() {
+        return wakeGroups == null ? Collections.emptyList() : Collections.unmodifiableList(wakeGroups);
+    }
+
+    @DataBoundSetter
+    public void setWakeGroups(List<WakeGroup> wakeGroups) {
+        this.wakeGroups = wakeGroups == null ? null : new ArrayList<>(wakeGroups);
+    }
+
+    public boolean isTrackPresence() {
+        return trackPresence;
+    }
+
+    @DataBoundSetter
+    public void setTrackPresence(boolean trackPresence) {
+        this.trackPresence = trackPresence;
+    }
+
+    public boolean isUseNeighborTable() {
+        return useNeighborTable;
+    }
+
+    @DataBoundSetter
+    public void setUseNeighborTable(boolean useNeighborTable) {
+        this.useNeighborTable = useNeighborTable;
+    }
+
+    public int getBeaconPort() {
+        return beaconPort;
+    }
+
+    @DataBoundSetter
+    public void setBeaconPort(int beaconPort) {
+        this.beaconPort = Math.max(0, Math.min(65535, beaconPort));
+    }
+
+    public Secret getBeaconSecret() {
+        return beaconSecret;
+    }
+
+    @DataBoundSetter
+    public void setBeaconSecret(Secret beaconSecret) {
+        this.beaconSecret = beaconSecret;
+    }
+
+    public FormValidation doCheckBeaconSecret(@QueryParameter int beaconPort, @QueryParameter Secret beaconSecret) {
+        return beaconPort > 0 && StringUtils.isEmpty(Secret.toString(beaconSecret))
+                ? FormValidation.error(Messages.WOLGlobalConfiguration_BeaconSecretRequired())
+                : FormValidation.ok();
+    }
+
+}
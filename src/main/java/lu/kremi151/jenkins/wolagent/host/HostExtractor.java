@@ -0,0 +1,49 @@
+/*
+ * Copyright 2019 Michel Kremer (kremi151)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package lu.kremi151.jenkins.wolagent.host;
+
+import hudson.ExtensionList;
+import hudson.ExtensionPoint;
+import hudson.slaves.ComputerLauncher;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+
+/**
+ * Extracts the host, and optionally the port, a delegate launcher connects to.
+ * Implementations are looked up once per launcher class and then cached.
+ */
+public abstract class HostExtractor implements ExtensionPoint {
+
+    public abstract boolean isApplicable(@Nonnull Class<? extends ComputerLauncher> launcherClass);
+
+    @CheckForNull
+    public abstract String getHost(@Nonnull ComputerLauncher launcher) throws ReflectiveOperationException;
+
+    /**
+     * @return the TCP port the launcher connects to, or {@code -1} if unknown
+     */
+    public int getPort(@Nonnull ComputerLauncher launcher) throws ReflectiveOperationException {
+        return -1;
+    }
+
+    @Nonnull
+    public static ExtensionList<HostExtractor> all() {
+        return ExtensionList.lookup(HostExtractor.class);
+    }
+
+}
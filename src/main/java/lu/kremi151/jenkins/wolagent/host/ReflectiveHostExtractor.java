@@ -0,0 +1,146 @@
+/*
+ * Copyright 2019 Michel Kremer (kremi151)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package lu.kremi151.jenkins.wolagent.host;
+
+import hudson.slaves.ComputerLauncher;
+import jenkins.model.Jenkins;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Base class for extractors calling getters of launchers provided by optional plugins.
+ * The getters are resolved once into method handles, so later lookups do not need reflection.
+ * Launcher classes are loaded through the class loader of all plugins, as the plugin providing them is usually
+ * not a dependency of the plugin providing the extractor.
+ */
+public abstract class ReflectiveHostExtractor extends HostExtractor {
+
+    private static final MethodType HOST_GETTER_TYPE = MethodType.methodType(String.class, ComputerLauncher.class);
+    private static final MethodType PORT_GETTER_TYPE = MethodType.methodType(int.class, ComputerLauncher.class);
+
+    private final String launcherClassName;
+    private final String hostGetterName;
+    @Nullable
+    private final String portGetterName;
+
+    // Resolving twice in a race is harmless, so no locking is needed.
+    // Only kept once the launcher class was found, as the plugin providing it may be installed later on.
+    private volatile Handles handles;
+
+    protected ReflectiveHostExtractor(String launcherClassName, String hostGetterName, @Nullable String portGetterName) {
+        this.launcherClassName = launcherClassName;
+        this.hostGetterName = hostGetterName;
+        this.portGetterName = portGetterName;
+    }
+
+    @Nonnull
+    private Handles handles() {
+        Handles handles = this.handles;
+        if (handles == null) {
+            handles = new Handles(getPluginClassLoader(), launcherClassName, hostGetterName, portGetterName);
+            if (handles.launcherClass != null) {
+                this.handles = handles;
+            }
+        }
+        return handles;
+    }
+
+    @Nonnull
+    private ClassLoader getPluginClassLoader() {
+        final Jenkins jenkins = Jenkins.getInstanceOrNull();
+        return jenkins == null ? getClass().getClassLoader() : jenkins.getPluginManager().uberClassLoader;
+    }
+
+    @Override
+    public boolean isApplicable(@Nonnull Class<? extends ComputerLauncher> launcherClass) {
+        final Class<?> supported = handles().launcherClass;
+        return supported != null && supported.isAssignableFrom(launcherClass);
+    }
+
+    @CheckForNull
+    @Override
+    public String getHost(@Nonnull ComputerLauncher launcher) throws ReflectiveOperationException {
+        final MethodHandle hostGetter = handles().hostGetter;
+        if (hostGetter == null) {
+            throw new NoSuchMethodException(launcherClassName + "." + hostGetterName);
+        }
+        try {
+            return (String) hostGetter.invokeExact(launcher);
+        } catch (Error | RuntimeException e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new InvocationTargetException(t);
+        }
+    }
+
+    @Override
+    public int getPort(@Nonnull ComputerLauncher launcher) throws ReflectiveOperationException {
+        final MethodHandle portGetter = handles().portGetter;
+        if (portGetter == null) {
+            return -1;
+        }
+        try {
+            return (int) portGetter.invokeExact(launcher);
+        } catch (Error | RuntimeException e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new InvocationTargetException(t);
+        }
+    }
+
+    private static final class Handles {
+
+        @Nullable
+        private final Class<?> launcherClass;
+        @Nullable
+        private final MethodHandle hostGetter;
+        @Nullable
+        private final MethodHandle portGetter;
+
+        private Handles(ClassLoader classLoader, String launcherClassName, String hostGetterName, @Nullable String portGetterName) {
+            Class<?> launcherClass;
+            try {
+                launcherClass = Class.forName(launcherClassName, false, classLoader);
+            } catch (ClassNotFoundException e) {
+                launcherClass = null;
+            }
+            this.launcherClass = launcherClass;
+            this.hostGetter = launcherClass == null ? null : tryResolve(launcherClass, hostGetterName, HOST_GETTER_TYPE);
+            this.portGetter = launcherClass == null || portGetterName == null ? null : tryResolve(launcherClass, portGetterName, PORT_GETTER_TYPE);
+        }
+
+        @Nullable
+        private static MethodHandle tryResolve(Class<?> launcherClass, String name, MethodType type) {
+            try {
+                Method getter = launcherClass.getDeclaredMethod(name);
+                getter.setAccessible(true);
+                return MethodHandles.lookup().unreflect(getter).asType(type);
+            } catch (NoSuchMethodException | IllegalAccessException e) {
+                return null;
+            }
+        }
+
+    }
+
+}
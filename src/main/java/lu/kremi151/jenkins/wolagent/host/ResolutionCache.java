@@ -0,0 +1,106 @@
+/*
+ * Copyright 2019 Michel Kremer (kremi151)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package lu.kremi151.jenkins.wolagent.host;
+
+import lu.kremi151.jenkins.wolagent.util.HostHelper;
+
+import javax.annotation.Nonnull;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plugin-wide cache of host name resolutions with a configurable time to live.
+ * Failed resolutions are cached as well, for a shorter time, so a degraded DNS server does not slow down every wake.
+ */
+public final class ResolutionCache {
+
+    public static final int DEFAULT_TTL_SECONDS = 300;
+    public static final int DEFAULT_NEGATIVE_TTL_SECONDS = 10;
+
+    private static final ResolutionCache INSTANCE = new ResolutionCache();
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private volatile long ttlNanos = TimeUnit.SECONDS.toNanos(DEFAULT_TTL_SECONDS);
+    private volatile long negativeTtlNanos = TimeUnit.SECONDS.toNanos(DEFAULT_NEGATIVE_TTL_SECONDS);
+
+    private ResolutionCache() {
+    }
+
+    @Nonnull
+    public static ResolutionCache get() {
+        return INSTANCE;
+    }
+
+    public void setTtl(int ttlSeconds, int negativeTtlSeconds) {
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(Math.max(0, ttlSeconds));
+        this.negativeTtlNanos = TimeUnit.SECONDS.toNanos(Math.max(0, negativeTtlSeconds));
+        entries.clear();
+    }
+
+    @Nonnull
+    public InetAddress resolve(@Nonnull String host) throws UnknownHostException {
+        if (HostHelper.isIpAddress(host)) {
+            // Literal addresses are parsed without any lookup
+            return InetAddress.getByName(host);
+        }
+        final long now = System.nanoTime();
+        final Entry entry = entries.get(host);
+        if (entry != null && now - entry.expiresAt < 0) {
+            return entry.getAddress();
+        }
+        try {
+            final InetAddress address = InetAddress.getByName(host);
+            entries.put(host, new Entry(address, null, now + ttlNanos));
+            return address;
+        } catch (UnknownHostException e) {
+            entries.put(host, new Entry(null, e, now + negativeTtlNanos));
+            throw e;
+        }
+    }
+
+    public void invalidate(@Nonnull String host) {
+        entries.remove(host);
+    }
+
+    private static final class Entry {
+
+        private final InetAddress address;
+        private final UnknownHostException error;
+        private final long expiresAt;
+
+        private Entry(InetAddress address, UnknownHostException error, long expiresAt) {
+            this.address = address;
+            this.error = error;
+            this.expiresAt = expiresAt;
+        }
+
+        private InetAddress getAddress() throws UnknownHostException {
+            if (address == null) {
+                final UnknownHostException e = new UnknownHostException(error.getMessage() + " (cached)");
+                e.initCause(error);
+                throw e;
+            }
+            return address;
+        }
+
+    }
+
+}
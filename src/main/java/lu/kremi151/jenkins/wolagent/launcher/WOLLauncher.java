@@ -19,24 +19,59 @@ package lu.kremi151.jenkins.wolagent.launcher;
 import hudson.Extension;
 import hudson.model.Descriptor;
 import hudson.model.DescriptorVisibilityFilter;
+import hudson.model.Node;
 import hudson.model.TaskListener;
 import hudson.remoting.Channel;
+import hudson.remoting.RemoteOutputStream;
 import hudson.slaves.ComputerLauncher;
 import hudson.slaves.DelegatingComputerLauncher;
 import hudson.slaves.SlaveComputer;
 import jline.internal.Nullable;
+import lu.kremi151.jenkins.wolagent.WOLGlobalConfiguration;
+import lu.kremi151.jenkins.wolagent.host.ResolutionCache;
+import lu.kremi151.jenkins.wolagent.metrics.LaunchMetrics;
+import lu.kremi151.jenkins.wolagent.metrics.LaunchPhase;
+import lu.kremi151.jenkins.wolagent.reachability.BootTimeEstimate;
+import lu.kremi151.jenkins.wolagent.reachability.BootTimeModel;
+import lu.kremi151.jenkins.wolagent.reachability.NeighborTable;
+import lu.kremi151.jenkins.wolagent.reachability.NeighborTableCheck;
+import lu.kremi151.jenkins.wolagent.reachability.PresenceTracker;
+import lu.kremi151.jenkins.wolagent.reachability.ProbeSchedule;
+import lu.kremi151.jenkins.wolagent.reachability.ReachabilityCheck;
+import lu.kremi151.jenkins.wolagent.reachability.ReachabilityPoller;
+import lu.kremi151.jenkins.wolagent.reachability.ReadinessProbe;
 import lu.kremi151.jenkins.wolagent.remoting.callables.RunCommand;
+import lu.kremi151.jenkins.wolagent.slave.WOLSlave;
+import lu.kremi151.jenkins.wolagent.slave.WOLSlaveComputer;
 import lu.kremi151.jenkins.wolagent.util.HostHelper;
+import lu.kremi151.jenkins.wolagent.util.MagicPacket;
 import lu.kremi151.jenkins.wolagent.util.WakeOnLAN;
+import lu.kremi151.jenkins.wolagent.util.WakeOnLAN.WakeTarget;
+import lu.kremi151.jenkins.wolagent.wake.PacketSender;
+import lu.kremi151.jenkins.wolagent.wake.RetransmitPolicy;
+import lu.kremi151.jenkins.wolagent.wake.WakeAddressing;
+import lu.kremi151.jenkins.wolagent.wake.WakeEndpoint;
+import lu.kremi151.jenkins.wolagent.wake.WakeExecutor;
+import lu.kremi151.jenkins.wolagent.wake.WakeLimiter;
+import lu.kremi151.jenkins.wolagent.wake.WakeRegistry;
+import lu.kremi151.jenkins.wolagent.wake.WakeRelays;
+import lu.kremi151.jenkins.wolagent.wake.WakeRetransmitter;
+import lu.kremi151.jenkins.wolagent.wake.WakeRoute;
 import org.apache.commons.lang.StringUtils;
 import org.kohsuke.stapler.DataBoundConstructor;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 import java.io.IOException;
-import java.lang.reflect.InvocationTargetException;
 import java.net.InetAddress;
-import java.util.concurrent.*;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -44,14 +79,34 @@ public class WOLLauncher extends DelegatingComputerLauncher {
 
     private static final Logger LOGGER = java.util.logging.Logger.getLogger(WOLLauncher.class.getName());
 
-    private transient String macAddress;
+    private static final long COMMAND_TIMEOUT = Long.getLong(WOLLauncher.class.getName() + ".commandTimeout", 60000L);
+    private static final int SUSPEND_CHECK_INTERVAL = Integer.getInteger(WOLLauncher.class.getName() + ".suspendCheckInterval", 1000);
+    private static final long SUSPEND_CHECK_TIMEOUT = Long.getLong(WOLLauncher.class.getName() + ".suspendCheckTimeout", 30000L);
+    private static final long NEIGHBOR_TABLE_MAX_SKIP = Long.getLong(WOLLauncher.class.getName() + ".neighborTableMaxSkip", 10000L);
+    /**
+     * While waiting for a node, probes are skipped for at most this many probe intervals in a row.
+     */
+    private static final int NEIGHBOR_TABLE_SKIP_INTERVALS = Integer.getInteger(WOLLauncher.class.getName() + ".neighborTableSkipIntervals", 3);
+
+    private transient MagicPacket magicPacket;
     private transient String broadcastIP;
+    private transient int wakePort;
+    private transient List<WakeEndpoint> wakeEndpoints;
 
     private transient int pingInterval;
     private transient int connectionTimeout;
+    private transient boolean adaptiveTiming;
+
+    private transient ReadinessProbe readinessProbe;
+
+    private transient RetransmitPolicy retransmitPolicy;
+
+    private transient WakeAddressing wakeAddressing;
 
     private transient String commandBeforeDisconnect;
 
+    private transient volatile WakeRoute cachedRoute;
+
     @DataBoundConstructor
     public WOLLauncher(ComputerLauncher launcher) {
         super(launcher);
@@ -59,84 +114,431 @@ public class WOLLauncher extends DelegatingComputerLauncher {
 
     public WOLLauncher(
             ComputerLauncher launcher,
-            String macAddress,
+            MagicPacket magicPacket,
             String broadcastIP,
+            int wakePort,
+            List<WakeEndpoint> wakeEndpoints,
             int pingInterval,
             int connectionTimeout,
+            boolean adaptiveTiming,
+            ReadinessProbe readinessProbe,
+            RetransmitPolicy retransmitPolicy,
+            WakeAddressing wakeAddressing,
             String commandBeforeDisconnect
     ) {
         this(launcher);
-        this.macAddress = macAddress;
+        this.magicPacket = magicPacket;
         this.broadcastIP = broadcastIP;
+        this.wakePort = wakePort;
+        this.wakeEndpoints = wakeEndpoints;
         this.pingInterval = pingInterval;
         this.connectionTimeout = connectionTimeout;
+        this.adaptiveTiming = adaptiveTiming;
+        this.readinessProbe = readinessProbe;
+        this.retransmitPolicy = retransmitPolicy;
+        this.wakeAddressing = wakeAddressing;
         this.commandBeforeDisconnect = commandBeforeDisconnect;
     }
 
-    private void ping(@Nullable String host) throws InterruptedException, IOException {
-        if (host == null) {
+    @Nonnull
+    private CompletableFuture<Void> ping(SlaveComputer computer, @Nullable InetAddress address, PacketSender sender, List<WakeTarget> targets, TaskListener listener) {
+        if (address == null) {
             // No host specified, so we apply a cooldown of 5 seconds
-            Thread.sleep(5000L);
-            return;
+            final CompletableFuture<Void> cooldown = new CompletableFuture<>();
+            ReachabilityPoller.get().getExecutor().schedule(() -> cooldown.complete(null), 5000L, TimeUnit.MILLISECONDS);
+            return cooldown;
+        }
+        // Booting nodes do not always announce themselves, so they are probed once in a while even if unresolved
+        final long maxSkip = Math.min(NEIGHBOR_TABLE_MAX_SKIP, (long) Math.max(1, NEIGHBOR_TABLE_SKIP_INTERVALS) * pingInterval);
+        final ReachabilityCheck check = withNeighborTable(createReachabilityCheck(address, listener), address, maxSkip);
+        listener.getLogger().println("Waiting for " + check + " to succeed");
+
+        ProbeSchedule schedule = ProbeSchedule.fixed(pingInterval);
+        long timeout = connectionTimeout;
+        final BootTimeEstimate estimate = adaptiveTiming ? BootTimeModel.get().getEstimate(computer.getName()) : null;
+        if (estimate != null) {
+            schedule = ProbeSchedule.adaptive(estimate, pingInterval);
+            timeout = ProbeSchedule.adaptiveTimeout(estimate, connectionTimeout);
+            listener.getLogger().println("Observed boot times: " + estimate + ", probing " + schedule + " with a timeout of " + timeout + " ms");
         }
-        final InetAddress address = InetAddress.getByName(host);
+        final CompletableFuture<Void> reachable = ReachabilityPoller.get()
+                .awaitReachable(computer.getName(), check, schedule, timeout);
+        // A resend through a relay may wait for the relay node, so resends stay off the threads probing the nodes
+        WakeRetransmitter.scheduleResends(WakeExecutor.get(), sender, targets, getEffectiveRetransmitPolicy(), pingInterval, reachable);
+        return reachable;
+    }
 
-        final ExecutorService executorService = Executors.newSingleThreadExecutor();
+    @Nonnull
+    private InetAddress resolveHost(SlaveComputer computer, String host, TaskListener listener) throws UnknownHostException {
+        final Node node = computer.getNode();
+        final WOLSlave slave = node instanceof WOLSlave ? (WOLSlave) node : null;
         try {
-            final Future future = executorService.submit(() -> {
-                while (true) {
-                    try {
-                        if (address.isReachable(pingInterval)) {
-                            break;
-                        }
-                        Thread.sleep((long) pingInterval);
-                    } catch (IOException | InterruptedException e) {}
-                }
-            });
-            future.get(connectionTimeout, TimeUnit.MILLISECONDS);
-        } catch (ExecutionException | TimeoutException e) {
-            throw new RuntimeException(e);
-        } finally {
-            if (!executorService.isTerminated()) {
-                executorService.shutdown();
+            final InetAddress address = ResolutionCache.get().resolve(host);
+            if (slave != null) {
+                slave.updateLastKnownAddress(address.getHostAddress());
+            }
+            return address;
+        } catch (UnknownHostException e) {
+            final String lastKnownAddress = slave == null ? null : slave.getLastKnownAddress();
+            if (StringUtils.isBlank(lastKnownAddress)) {
+                throw e;
             }
+            listener.getLogger().println("Unable to resolve " + host + " (" + e.getMessage() + "), falling back to last known address " + lastKnownAddress);
+            return InetAddress.getByName(lastKnownAddress);
         }
     }
 
-    @Override
-    public void launch(SlaveComputer computer, TaskListener listener) throws IOException, InterruptedException {
+    private ReachabilityCheck createReachabilityCheck(InetAddress address, TaskListener listener) {
+        ReadinessProbe probe = readinessProbe == null ? ReadinessProbe.DEFAULT : readinessProbe;
+        int port = -1;
+        if (probe.requiresPort()) {
+            try {
+                port = HostHelper.tryInferPort(launcher);
+            } catch (ReflectiveOperationException e) {
+                LOGGER.log(Level.WARNING, "Unable to infer port via reflection from launcher", e);
+            }
+            if (port <= 0) {
+                listener.getLogger().println("Unable to infer port from " + launcher + ", falling back to " + ReadinessProbe.ICMP.getDisplayName());
+                probe = ReadinessProbe.ICMP;
+            }
+        }
+        return probe.createCheck(address, port, pingInterval);
+    }
+
+    /**
+     * Creates a single cheap check telling whether the node is up. A TCP connect to the port of the delegate launcher
+     * is preferred, as it does not hold a thread while waiting.
+     *
+     * @param timeout the timeout of the check in milliseconds
+     * @return the check, or {@code null} if the address of the node is unknown
+     */
+    @CheckForNull
+    public ReachabilityCheck createPresenceCheck(SlaveComputer computer, int timeout) {
+        final InetAddress address = tryResolveNodeAddress(computer, TaskListener.NULL);
+        if (address == null) {
+            return null;
+        }
+        int port = -1;
+        try {
+            port = HostHelper.tryInferPort(launcher);
+        } catch (ReflectiveOperationException e) {
+            LOGGER.log(Level.FINE, "Unable to infer port via reflection from launcher", e);
+        }
+        return withNeighborTable((port > 0 ? ReadinessProbe.TCP : ReadinessProbe.ICMP).createCheck(address, port, timeout), address, Long.MAX_VALUE);
+    }
+
+    /**
+     * Lets the kernel neighbor table answer for nodes it could not resolve, if enabled and readable on the controller.
+     *
+     * @param maxSkip see {@link NeighborTableCheck#NeighborTableCheck(NeighborTable, String, InetAddress, ReachabilityCheck, long)}
+     */
+    private ReachabilityCheck withNeighborTable(ReachabilityCheck check, InetAddress address, long maxSkip) {
+        if (magicPacket == null || !WOLGlobalConfiguration.get().isUseNeighborTable() || !NeighborTable.get().isAvailable()) {
+            return check;
+        }
+        return new NeighborTableCheck(NeighborTable.get(), magicPacket.getMacAddress(), address, check, maxSkip);
+    }
+
+    /**
+     * Sends the magic packet and starts waiting for the node to become reachable.
+     * If a wake of this node is already in progress, the pending wake is joined instead of starting a new one.
+     *
+     * @return a future completing once the node is reachable
+     */
+    @Nonnull
+    public CompletableFuture<Void> wake(SlaveComputer computer, TaskListener listener) throws IOException {
+        return WakeRegistry.get().joinOrStart(computer.getName(), listener, () -> startWake(computer, listener));
+    }
+
+    @Nonnull
+    private CompletableFuture<Void> startWake(SlaveComputer computer, TaskListener listener) throws IOException {
+        if (magicPacket == null) {
+            throw new IOException("No valid MAC address configured for " + computer.getName());
+        }
+        final String nodeName = computer.getName();
+        long phaseStart = System.nanoTime();
         String host = null;
         try {
             host = HostHelper.tryInferHost(launcher);
             listener.getLogger().println("Inferred host name: " + host);
-        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+        } catch (ReflectiveOperationException e) {
             LOGGER.log(Level.WARNING, "Unable to infer host via reflection from launcher", e);
             listener.getLogger().println("Unable to infer hostname from " + launcher + " (" + e.getMessage() + ")");
             listener.getLogger().println("Using static cooldown instead of pinging");
         }
-
-        if (StringUtils.isNotBlank(host) && StringUtils.isBlank(broadcastIP)) {
-            listener.getLogger().println("No explicit broadcast IP specified, try to guess from the inferred host");
+        InetAddress address = null;
+        UnknownHostException resolutionError = null;
+        if (StringUtils.isNotBlank(host)) {
             try {
-                broadcastIP = HostHelper.tryGuessBroadcastIp(host);
-                listener.getLogger().println("Guessed broadcast IP: " + broadcastIP);
-            } catch (Exception e) {
-                listener.getLogger().println("Unable to guess broadcast IP from inferred host (" + e.getMessage() + ")");
+                address = resolveHost(computer, host, listener);
+            } catch (UnknownHostException e) {
+                listener.getLogger().println("Unable to resolve inferred host (" + e.getMessage() + ")");
+                resolutionError = e;
             }
         }
-        if (StringUtils.isBlank(broadcastIP)) {
+        LaunchMetrics.record(nodeName, LaunchPhase.INFER_HOST, phaseStart);
+
+        phaseStart = System.nanoTime();
+        final WakeAddressing addressing = getEffectiveWakeAddressing();
+        String destination = null;
+        if (StringUtils.isNotBlank(broadcastIP) && addressing == WakeAddressing.BROADCAST) {
+            destination = broadcastIP;
+        } else if (address != null) {
+            listener.getLogger().println("No explicit broadcast IP specified, try to compute the route to the inferred host");
+            try {
+                WakeRoute route = cachedRoute;
+                if (route == null || !route.isFor(address, addressing)) {
+                    route = WakeRoute.compute(address, addressing);
+                    cachedRoute = route;
+                }
+                if (route != null) {
+                    destination = route.getDestination();
+                    listener.getLogger().println("Computed wake route: " + route);
+                }
+            } catch (IOException e) {
+                listener.getLogger().println("Unable to compute wake route to inferred host (" + e.getMessage() + ")");
+            }
+        }
+        final List<WakeTarget> targets = new ArrayList<>();
+        final int port = getEffectiveWakePort();
+        if (StringUtils.isNotBlank(destination)) {
+            targets.add(new WakeTarget(magicPacket, destination, port));
+        }
+        if (wakeEndpoints != null) {
+            for (WakeEndpoint endpoint : wakeEndpoints) {
+                // A blank address would resolve to the loopback interface
+                if (StringUtils.isBlank(endpoint.getAddress())) {
+                    listener.getLogger().println("Skipping wake endpoint without address");
+                    continue;
+                }
+                targets.add(new WakeTarget(magicPacket, endpoint.getAddress(), endpoint.getPort()));
+            }
+        }
+        if (targets.isEmpty()) {
             listener.getLogger().println("Unable to guess broadcast IP, defaulting to 192.168.0.255");
-            broadcastIP = "192.168.0.255";
+            targets.add(new WakeTarget(magicPacket, "192.168.0.255", port));
         }
+        LaunchMetrics.record(nodeName, LaunchPhase.RESOLVE_BROADCAST, phaseStart);
+
+        final Node node = computer.getNode();
+        final CompletableFuture<WakeLimiter.Permit> permit = WakeLimiter.get().acquire(node instanceof WOLSlave ? (WOLSlave) node : null);
+        final WakeLimiter.Permit granted = permit.getNow(null);
+        final UnknownHostException error = resolutionError;
+        final InetAddress nodeAddress = address;
+        final CompletableFuture<Void> reachable;
+        if (granted != null) {
+            try {
+                reachable = sendAndAwait(computer, nodeAddress, targets, error, listener);
+            } catch (IOException | RuntimeException e) {
+                granted.release();
+                throw e;
+            }
+            reachable.whenComplete((v, t) -> granted.release());
+        } else {
+            listener.getLogger().println("Waiting for another node of the same wake group to boot first");
+            reachable = new CompletableFuture<>();
+            // Permits are granted on the wake executor, so sending does not hold up the thread releasing a permit
+            permit.whenComplete((p, t) -> {
+                if (t != null) {
+                    reachable.completeExceptionally(t);
+                    return;
+                }
+                if (reachable.isDone()) {
+                    p.release();
+                    return;
+                }
+                final CompletableFuture<Void> inner;
+                try {
+                    inner = sendAndAwait(computer, nodeAddress, targets, error, listener);
+                } catch (IOException | RuntimeException e) {
+                    p.release();
+                    reachable.completeExceptionally(e);
+                    return;
+                }
+                inner.whenComplete((v, e) -> {
+                    p.release();
+                    if (e == null) {
+                        reachable.complete(null);
+                    } else {
+                        reachable.completeExceptionally(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+                    }
+                });
+                reachable.whenComplete((v, e) -> {
+                    if (reachable.isCancelled()) {
+                        inner.cancel(true);
+                    }
+                });
+            });
+            reachable.whenComplete((v, t) -> {
+                if (reachable.isCancelled()) {
+                    permit.cancel(false);
+                }
+            });
+        }
+        return reachable;
+    }
 
-        listener.getLogger().println("Sending magic packet, time to wake up");
-        WakeOnLAN.sendMagicPacket(broadcastIP, macAddress);
+    @Nonnull
+    private CompletableFuture<Void> sendAndAwait(SlaveComputer computer, @Nullable InetAddress address, List<WakeTarget> targets, @Nullable UnknownHostException resolutionError, TaskListener listener) throws IOException {
+        final String nodeName = computer.getName();
+        final long phaseStart = System.nanoTime();
+        final Node node = computer.getNode();
+        final PacketSender sender = node instanceof WOLSlave
+                ? WakeRelays.select((WOLSlave) node, address, getEffectiveWakePort())
+                : PacketSender.CONTROLLER;
+        listener.getLogger().println("Sending magic packet to " + targets.size() + " endpoint(s) from the " + sender + ", time to wake up");
+        WakeRetransmitter.sendBurst(sender, targets, getEffectiveRetransmitPolicy());
+        LaunchMetrics.record(nodeName, LaunchPhase.SEND_PACKET, phaseStart);
+
+        if (resolutionError != null) {
+            throw resolutionError;
+        }
 
+        final long waitStart = System.nanoTime();
+        // Without an address there is only a fixed cooldown, which says nothing about the boot time
+        final boolean bootTimeObserved = address != null;
         listener.getLogger().println("Pinging node");
-        ping(host);
+        final CompletableFuture<Void> reachable = ping(computer, address, sender, targets, listener);
+        reachable.whenComplete((v, t) -> {
+            if (t == null) {
+                long millis = LaunchMetrics.record(nodeName, LaunchPhase.WAIT_REACHABLE, waitStart);
+                if (bootTimeObserved) {
+                    BootTimeModel.get().record(nodeName, millis);
+                    PresenceTracker.get().markAlive(nodeName);
+                }
+                listener.getLogger().println("Node became reachable after " + millis + " ms");
+            } else {
+                LaunchMetrics.recordFailedWake(nodeName);
+            }
+        });
+        return reachable;
+    }
+
+    @Override
+    public void launch(SlaveComputer computer, TaskListener listener) throws IOException, InterruptedException {
+        long launchStart = System.nanoTime();
+        clearSuspending(computer);
+        final WOLSlaveComputer.WakeOutcome outcome = computer instanceof WOLSlaveComputer
+                ? ((WOLSlaveComputer) computer).takeWakeOutcome() : null;
+        final boolean woken;
+        if (outcome != null) {
+            // Connected through WOLSlaveComputer, which waited for the node without holding any thread
+            if (outcome.getError() != null) {
+                throw new IOException("Node " + computer.getName() + " did not become reachable", outcome.getError());
+            }
+            woken = outcome.isWoken();
+            launchStart = outcome.getStartNanos();
+            if (woken) {
+                listener.getLogger().println("Node became reachable after " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - launchStart) + " ms");
+            }
+        } else {
+            // Launched directly, so this launcher thread has to wait while the node boots
+            final CompletableFuture<Boolean> awake = awaitAwake(computer, listener);
+            try {
+                woken = awake.get();
+            } catch (ExecutionException e) {
+                throw new IOException("Node " + computer.getName() + " did not become reachable", e.getCause());
+            } catch (InterruptedException e) {
+                // Stops polling since nobody is waiting for the node anymore
+                awake.cancel(true);
+                throw e;
+            }
+        }
+        if (woken) {
+            delegateLaunch(computer, listener, launchStart);
+        } else {
+            delegateLaunch(computer, listener);
+        }
+    }
+
+    /**
+     * Wakes the node unless it is already awake, without blocking the calling thread.
+     * The wake is started from the {@link WakeExecutor}, and no thread is held while the node boots.
+     *
+     * @return a future completing with whether the node had to be woken up once it is reachable, cancelling it
+     * stops waiting for the node
+     */
+    @Nonnull
+    public CompletableFuture<Boolean> awaitAwake(SlaveComputer computer, TaskListener listener) {
+        final CompletableFuture<Boolean> awake = new CompletableFuture<>();
+        try {
+            WakeExecutor.get().execute(() -> {
+                if (awake.isDone()) {
+                    return;
+                }
+                clearSuspending(computer);
+                final CompletableFuture<Void> reachable;
+                try {
+                    if (WOLGlobalConfiguration.get().isTrackPresence() && isAlreadyAwake(computer, listener)) {
+                        awake.complete(false);
+                        return;
+                    }
+                    reachable = wake(computer, listener);
+                } catch (IOException | InterruptedException | RuntimeException e) {
+                    awake.completeExceptionally(e);
+                    return;
+                }
+                awake.whenComplete((v, t) -> {
+                    if (awake.isCancelled()) {
+                        reachable.cancel(true);
+                    }
+                });
+                reachable.whenComplete((v, t) -> {
+                    if (t == null) {
+                        awake.complete(true);
+                    } else {
+                        awake.completeExceptionally(t);
+                    }
+                });
+            });
+        } catch (RejectedExecutionException e) {
+            awake.completeExceptionally(e);
+        }
+        return awake;
+    }
 
+    /**
+     * Tells whether the node was seen alive recently and still answers to a single presence check, in which case
+     * there is no need to wake it and wait for it to boot.
+     */
+    private boolean isAlreadyAwake(SlaveComputer computer, TaskListener listener) throws InterruptedException {
+        final String nodeName = computer.getName();
+        final PresenceTracker tracker = PresenceTracker.get();
+        final long age = tracker.getAliveAge(nodeName);
+        if (age < 0L || WakeRegistry.get().isWaking(nodeName)) {
+            return false;
+        }
+        final ReachabilityCheck check = createPresenceCheck(computer, PresenceTracker.getProbeTimeout());
+        if (check == null) {
+            return false;
+        }
+        boolean alive;
+        try {
+            alive = Boolean.TRUE.equals(check.attempt(tracker.getExecutor()).get());
+        } catch (ExecutionException e) {
+            LOGGER.log(Level.FINE, "Presence check " + check + " of node " + nodeName + " failed", e.getCause());
+            alive = false;
+        }
+        if (!alive) {
+            tracker.markGone(nodeName);
+            listener.getLogger().println("Node was seen alive " + age + " ms ago, but does not answer to " + check + " anymore");
+            return false;
+        }
+        tracker.markAlive(nodeName);
+        listener.getLogger().println("Node was seen alive " + age + " ms ago and answers to " + check + ", skipping wake");
+        return true;
+    }
+
+    private void delegateLaunch(SlaveComputer computer, TaskListener listener, long launchStart) throws IOException, InterruptedException {
+        delegateLaunch(computer, listener);
+        LaunchMetrics.record(computer.getName(), LaunchPhase.WAKE_TO_ONLINE, launchStart);
+    }
+
+    private void delegateLaunch(SlaveComputer computer, TaskListener listener) throws IOException, InterruptedException {
+        final long delegateStart = System.nanoTime();
         listener.getLogger().println("Launching agent");
         super.launch(computer, listener);
+        LaunchMetrics.record(computer.getName(), LaunchPhase.DELEGATE_LAUNCH, delegateStart);
     }
 
     private void executePreDisconnectCommand(SlaveComputer computer, TaskListener listener) throws IOException, InterruptedException {
@@ -149,7 +551,27 @@ public class WOLLauncher extends DelegatingComputerLauncher {
             return;
         }
         listener.getLogger().println("Execute command before disconnecting: " + commandBeforeDisconnect);
-        channel.call(new RunCommand(commandBeforeDisconnect));
+        final InetAddress address = tryResolveNodeAddress(computer, listener);
+        final int exitCode;
+        try {
+            exitCode = channel.call(new RunCommand(commandBeforeDisconnect, new RemoteOutputStream(listener.getLogger()), COMMAND_TIMEOUT));
+        } catch (IOException e) {
+            if (!channel.isClosingOrClosed()) {
+                throw e;
+            }
+            // A suspending machine may take the channel down before the command returns
+            listener.getLogger().println("Channel closed while executing command (" + e.getMessage() + ")");
+            PresenceTracker.get().markGone(computer.getName());
+            confirmUnreachable(computer, address, listener);
+            return;
+        }
+        if (exitCode != 0) {
+            listener.error("Command before disconnecting exited with code " + exitCode);
+            return;
+        }
+        listener.getLogger().println("Command before disconnecting exited with code 0");
+        PresenceTracker.get().markGone(computer.getName());
+        confirmUnreachable(computer, address, listener);
     }
 
     @Override
@@ -163,6 +585,55 @@ public class WOLLauncher extends DelegatingComputerLauncher {
         super.beforeDisconnect(computer, listener);
     }
 
+    @Override
+    public void afterDisconnect(SlaveComputer computer, TaskListener listener) {
+        clearSuspending(computer);
+        super.afterDisconnect(computer, listener);
+    }
+
+    private static void clearSuspending(SlaveComputer computer) {
+        if (computer instanceof WOLSlaveComputer) {
+            ((WOLSlaveComputer) computer).setSuspending(false);
+        }
+    }
+
+    @CheckForNull
+    private InetAddress tryResolveNodeAddress(SlaveComputer computer, TaskListener listener) {
+        try {
+            final String host = HostHelper.tryInferHost(launcher);
+            return StringUtils.isBlank(host) ? null : resolveHost(computer, host, listener);
+        } catch (ReflectiveOperationException | UnknownHostException e) {
+            LOGGER.log(Level.FINE, "Unable to determine address of " + computer.getName(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Polls the node in the background until it stops answering, so a suspend which did not happen gets noticed.
+     *
+     * @return a future completing once the node is unreachable, or failing if it still answers after the timeout
+     */
+    @Nonnull
+    private CompletableFuture<Void> confirmUnreachable(SlaveComputer computer, @CheckForNull InetAddress address, TaskListener listener) {
+        if (address == null) {
+            listener.getLogger().println("Unknown node address, unable to confirm that the node went down");
+            return CompletableFuture.completedFuture(null);
+        }
+        final String nodeName = computer.getName();
+        final long start = System.nanoTime();
+        final CompletableFuture<Void> unreachable = ReachabilityPoller.get()
+                .awaitUnreachable(nodeName, withNeighborTable(createReachabilityCheck(address, listener), address, Long.MAX_VALUE), SUSPEND_CHECK_INTERVAL, SUSPEND_CHECK_TIMEOUT);
+        unreachable.whenComplete((v, t) -> {
+            if (t == null) {
+                LOGGER.log(Level.INFO, "Node {0} went down {1} ms after the command before disconnecting", new Object[]{nodeName, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)});
+            } else {
+                LOGGER.log(Level.WARNING, "Node {0} is still reachable after the command before disconnecting: {1}", new Object[]{nodeName, t.getMessage()});
+                PresenceTracker.get().markAlive(nodeName);
+            }
+        });
+        return unreachable;
+    }
+
     public int getPingInterval() {
         return pingInterval;
     }
@@ -179,12 +650,76 @@ public class WOLLauncher extends DelegatingComputerLauncher {
         this.connectionTimeout = connectionTimeout;
     }
 
+    public boolean isAdaptiveTiming() {
+        return adaptiveTiming;
+    }
+
+    public void setAdaptiveTiming(boolean adaptiveTiming) {
+        this.adaptiveTiming = adaptiveTiming;
+    }
+
+    public ReadinessProbe getReadinessProbe() {
+        return readinessProbe;
+    }
+
+    public void setReadinessProbe(ReadinessProbe readinessProbe) {
+        this.readinessProbe = readinessProbe;
+    }
+
+    private RetransmitPolicy getEffectiveRetransmitPolicy() {
+        return retransmitPolicy == null ? RetransmitPolicy.SINGLE_PACKET : retransmitPolicy;
+    }
+
+    private int getEffectiveWakePort() {
+        return WakeOnLAN.effectivePort(wakePort);
+    }
+
+    public int getWakePort() {
+        return wakePort;
+    }
+
+    public void setWakePort(int wakePort) {
+        this.wakePort = wakePort;
+    }
+
+    public List<WakeEndpoint> getWakeEndpoints() {
+        return wakeEndpoints;
+    }
+
+    public void setWakeEndpoints(List<WakeEndpoint> wakeEndpoints) {
+        this.wakeEndpoints = wakeEndpoints;
+    }
+
+    private WakeAddressing getEffectiveWakeAddressing() {
+        return wakeAddressing == null ? WakeAddressing.DEFAULT : wakeAddressing;
+    }
+
+    public WakeAddressing getWakeAddressing() {
+        return wakeAddressing;
+    }
+
+    public void setWakeAddressing(WakeAddressing wakeAddressing) {
+        this.wakeAddressing = wakeAddressing;
+    }
+
+    public RetransmitPolicy getRetransmitPolicy() {
+        return retransmitPolicy;
+    }
+
+    public void setRetransmitPolicy(RetransmitPolicy retransmitPolicy) {
+        this.retransmitPolicy = retransmitPolicy;
+    }
+
     public String getMacAddress() {
-        return macAddress;
+        return magicPacket == null ? null : magicPacket.getMacAddress();
+    }
+
+    public MagicPacket getMagicPacket() {
+        return magicPacket;
     }
 
-    public void setMacAddress(String macAddress) {
-        this.macAddress = macAddress;
+    public void setMagicPacket(MagicPacket magicPacket) {
+        this.magicPacket = magicPacket;
     }
 
     public String getCommandBeforeDisconnect() {
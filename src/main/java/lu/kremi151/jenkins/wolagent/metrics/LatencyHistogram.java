@@ -0,0 +1,127 @@
+/*
+ * Copyright 2019 Michel Kremer (kremi151)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package lu.kremi151.jenkins.wolagent.metrics;
+
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size, lock-free histogram of millisecond durations.
+ * Like an HDR histogram, buckets are linear within each power of two, which bounds the relative error of
+ * reported percentiles to about 6% while keeping the memory footprint constant.
+ */
+@ExportedBean(defaultVisibility = 2)
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_MAGNITUDE = 32;
+    private static final int BUCKETS = SUB_BUCKETS + (MAX_MAGNITUDE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long millis) {
+        if (millis < 0) {
+            millis = 0;
+        }
+        counts.incrementAndGet(indexOf(millis));
+        count.incrementAndGet();
+        sum.addAndGet(millis);
+        long currentMax;
+        while (millis > (currentMax = max.get()) && !max.compareAndSet(currentMax, millis)) {
+            // Retry until max is updated
+        }
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        final int magnitude = Math.min(63 - Long.numberOfLeadingZeros(value), MAX_MAGNITUDE - 1);
+        final int shift = magnitude - SUB_BUCKET_BITS;
+        final int subBucket = (int) Math.min((value >>> shift) - SUB_BUCKETS, SUB_BUCKETS - 1);
+        return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket;
+    }
+
+    static long upperBoundOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        final int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+        final int subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * @param percentile a value between 0 and 100
+     * @return the duration in milliseconds below which the given percentage of recorded values fall
+     */
+    public long getPercentile(double percentile) {
+        final long total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+        long cumulative = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            cumulative += counts.get(i);
+            if (cumulative >= rank) {
+                // The last bucket is open-ended
+                return i == BUCKETS - 1 ? max.get() : Math.min(upperBoundOf(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    @Exported
+    public long getCount() {
+        return count.get();
+    }
+
+    @Exported
+    public long getMean() {
+        final long total = count.get();
+        return total == 0 ? 0 : sum.get() / total;
+    }
+
+    @Exported
+    public long getMax() {
+        return max.get();
+    }
+
+    @Exported
+    public long getP50() {
+        return getPercentile(50);
+    }
+
+    @Exported
+    public long getP90() {
+        return getPercentile(90);
+    }
+
+    @Exported
+    public long getP99() {
+        return getPercentile(99);
+    }
+
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2019 Michel Kremer (kremi151)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package lu.kremi151.jenkins.wolagent.metrics;
+
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps per-phase launch timings of every node, as well as plugin-wide aggregates.
+ */
+@ExportedBean(defaultVisibility = 2)
+public final class LaunchMetrics {
+
+    private static final LaunchMetrics AGGREGATE = new LaunchMetrics();
+    private static final Map<String, LaunchMetrics> NODES = new ConcurrentHashMap<>();
+
+    private final Map<LaunchPhase, LatencyHistogram> histograms = new EnumMap<>(LaunchPhase.class);
+    private final AtomicLong failedWakes = new AtomicLong();
+
+    private LaunchMetrics() {
+        for (LaunchPhase phase : LaunchPhase.values()) {
+            histograms.put(phase, new LatencyHistogram());
+        }
+    }
+
+    @Nonnull
+    public static LaunchMetrics aggregate() {
+        return AGGREGATE;
+    }
+
+    @Nonnull
+    public static LaunchMetrics forNode(String nodeName) {
+        return NODES.computeIfAbsent(nodeName, name -> new LaunchMetrics());
+    }
+
+    @CheckForNull
+    public static LaunchMetrics getIfPresent(String nodeName) {
+        return NODES.get(nodeName);
+    }
+
+    public static void remove(String nodeName) {
+        NODES.remove(nodeName);
+    }
+
+    /**
+     * Records the time elapsed since {@code startNanos}, as returned by {@link System#nanoTime()}.
+     *
+     * @return the recorded duration in milliseconds
+     */
+    public static long record(String nodeName, LaunchPhase phase, long startNanos) {
+        final long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        forNode(nodeName).histograms.get(phase).record(millis);
+        AGGREGATE.histograms.get(phase).record(millis);
+        return millis;
+    }
+
+    public static void recordFailedWake(String nodeName) {
+        forNode(nodeName).failedWakes.incrementAndGet();
+        AGGREGATE.failedWakes.incrementAndGet();
+    }
+
+    @Nonnull
+    public LatencyHistogram getHistogram(LaunchPhase phase) {
+        return histograms.get(phase);
+    }
+
+    @Exported
+    public Map<LaunchPhase, LatencyHistogram> getPhases() {
+        return histograms;
+    }
+
+    @Exported
+    public long getFailedWakes() {
+        return failedWakes.get();
+    }
+
+}
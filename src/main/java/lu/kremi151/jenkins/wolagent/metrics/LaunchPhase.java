@@ -0,0 +1,62 @@
+/*
+ * Copyright 2019 Michel Kremer (kremi151)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package lu.kremi151.jenkins.wolagent.metrics;
+
+import lu.kremi151.jenkins.wolagent.Messages;
+
+public enum LaunchPhase {
+
+    INFER_HOST {
+        @Override
+        public String getDisplayName() {
+            return Messages.LaunchPhase_InferHost();
+        }
+    },
+    RESOLVE_BROADCAST {
+        @Override
+        public String getDisplayName() {
+            return Messages.LaunchPhase_ResolveBroadcast();
+        }
+    },
+    SEND_PACKET {
+        @Override
+        public String getDisplayName() {
+            return Messages.LaunchPhase_SendPacket();
+        }
+    },
+    WAIT_REACHABLE {
+        @Override
+        public String getDisplayName() {
+            return Messages.LaunchPhase_WaitReachable();
+        }
+    },
+    DELEGATE_LAUNCH {
+        @Override
+        public String getDisplayName() {
+            return Messages.LaunchPhase_DelegateLaunch();
+        }
+    },
+    WAKE_TO_ONLINE {
+        @Override
+        public String getDisplayName() {
+            return Messages.LaunchPhase_WakeToOnline();
+        }
+    };
+
+    public abstract String getDisplayName();
+
+}
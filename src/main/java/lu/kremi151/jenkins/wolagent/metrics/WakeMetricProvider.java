@@ -0,0 +1,62 @@
+/*
+ * Copyright 2019 Michel Kremer (kremi151)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package lu.kremi151.jenkins.wolagent.metrics;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricSet;
+import hudson.Extension;
+import jenkins.metrics.api.MetricProvider;
+
+import javax.annotation.Nonnull;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Exposes the plugin-wide launch timings through the Metrics plugin, if it is installed.
+ */
+@Extension(optional = true)
+public class WakeMetricProvider extends MetricProvider {
+
+    private final MetricSet metricSet;
+
+    public WakeMetricProvider() {
+        final Map<String, Metric> metrics = new HashMap<>();
+        for (LaunchPhase phase : LaunchPhase.values()) {
+            final LatencyHistogram histogram = LaunchMetrics.aggregate().getHistogram(phase);
+            final String prefix = "jenkins.wol." + phase.name().toLowerCase(Locale.ENGLISH) + ".";
+            metrics.put(prefix + "count", (Gauge<Long>) histogram::getCount);
+            metrics.put(prefix + "mean", (Gauge<Long>) histogram::getMean);
+            metrics.put(prefix + "max", (Gauge<Long>) histogram::getMax);
+            metrics.put(prefix + "p50", (Gauge<Long>) histogram::getP50);
+            metrics.put(prefix + "p90", (Gauge<Long>) histogram::getP90);
+            metrics.put(prefix + "p99", (Gauge<Long>) histogram::getP99);
+        }
+        metrics.put("jenkins.wol.failed_wakes", (Gauge<Long>) () -> LaunchMetrics.aggregate().getFailedWakes());
+        final Map<String, Metric> unmodifiable = Collections.unmodifiableMap(metrics);
+        this.metricSet = () -> unmodifiable;
+    }
+
+    @Nonnull
+    @Override
+    public MetricSet getMetricSet() {
+        return metricSet;
+    }
+
+}
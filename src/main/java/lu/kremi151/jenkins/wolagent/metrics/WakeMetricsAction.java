@@ -0,0 +1,92 @@
+/*
+ * Copyright 2019 Michel Kremer (kremi151)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package lu.kremi151.jenkins.wolagent.metrics;
+
+import hudson.Extension;
+import hudson.model.Action;
+import hudson.model.Api;
+import hudson.model.Computer;
+import hudson.model.TransientComputerActionFactory;
+import lu.kremi151.jenkins.wolagent.Messages;
+import lu.kremi151.jenkins.wolagent.slave.WOLSlaveComputer;
+
+import javax.annotation.Nonnull;
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * Shows the launch timings of a node on its computer page, and through {@code api/json}.
+ */
+public class WakeMetricsAction implements Action {
+
+    private final Computer computer;
+
+    public WakeMetricsAction(Computer computer) {
+        this.computer = computer;
+    }
+
+    public Computer getComputer() {
+        return computer;
+    }
+
+    @Nonnull
+    public LaunchMetrics getMetrics() {
+        return LaunchMetrics.forNode(computer.getName());
+    }
+
+    @Nonnull
+    public LaunchMetrics getAggregateMetrics() {
+        return LaunchMetrics.aggregate();
+    }
+
+    public LaunchPhase[] getPhases() {
+        return LaunchPhase.values();
+    }
+
+    public Api getApi() {
+        return new Api(getMetrics());
+    }
+
+    @Override
+    public String getIconFileName() {
+        return "graph.png";
+    }
+
+    @Override
+    public String getDisplayName() {
+        return Messages.WakeMetricsAction_DisplayName();
+    }
+
+    @Override
+    public String getUrlName() {
+        return "wolMetrics";
+    }
+
+    @Extension
+    public static class FactoryImpl extends TransientComputerActionFactory {
+
+        @Override
+        public Collection<? extends Action> createFor(Computer target) {
+            if (target instanceof WOLSlaveComputer) {
+                return Collections.singletonList(new WakeMetricsAction(target));
+            }
+            return Collections.emptyList();
+        }
+
+    }
+
+}
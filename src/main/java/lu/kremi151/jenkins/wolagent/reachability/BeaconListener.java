@@ -0,0 +1,215 @@
+/*
+ * Copyright 2019 Michel Kremer (kremi151)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package lu.kremi151.jenkins.wolagent.reachability;
+
+import hudson.model.Node;
+import hudson.util.Secret;
+import jenkins.model.Jenkins;
+import lu.kremi151.jenkins.wolagent.slave.WOLSlave;
+import org.apache.commons.lang.StringUtils;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Receives the UDP beacons nodes send once they finished booting, see {@code scripts/wol-beacon.sh}, and completes
+ * the pending wait of the announcing node right away instead of waiting for the next probe.
+ * <p>
+ * A beacon is the line {@code WOLAGENT1 <mac> <epoch seconds> <hmac> <node name>}, signed with HMAC-SHA256 over
+ * {@code WOLAGENT1 <mac> <epoch seconds> <node name>}. Since a beacon ends the wait for a node, the listener only
+ * runs with a secret configured. A timestamp is only accepted once per node, and never if it predates the start of
+ * the controller, so beacons cannot be replayed after a restart either.
+ */
+public final class BeaconListener {
+
+    private static final Logger LOGGER = java.util.logging.Logger.getLogger(BeaconListener.class.getName());
+
+    static final String PROTOCOL = "WOLAGENT1";
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final long MAX_CLOCK_SKEW_SECONDS = Long.getLong(BeaconListener.class.getName() + ".maxClockSkew", 300L);
+    private static final int MAX_LENGTH = 512;
+
+    private static final BeaconListener INSTANCE = new BeaconListener();
+
+    private final Map<String, Long> lastTimestamps = new ConcurrentHashMap<>();
+
+    /**
+     * Beacons sent before this JVM started may have been accepted already by the previous one.
+     */
+    private final long notBefore = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+
+    private volatile byte[] secret;
+
+    private DatagramSocket socket;
+
+    private BeaconListener() {
+    }
+
+    @Nonnull
+    public static BeaconListener get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Starts listening on the given port, or stops listening if it is not positive or no secret is given.
+     * The socket is only reopened if the port changed.
+     */
+    public synchronized void configure(int port, @CheckForNull Secret secret) {
+        final String plainSecret = Secret.toString(secret);
+        this.secret = StringUtils.isEmpty(plainSecret) ? null : plainSecret.getBytes(StandardCharsets.UTF_8);
+        if (port > 0 && this.secret == null) {
+            LOGGER.log(Level.WARNING, "Not listening for beacons on UDP port {0}, a beacon secret is required", port);
+            port = 0;
+        }
+        if (socket != null && !socket.isClosed() && socket.getLocalPort() == port) {
+            return;
+        }
+        close();
+        if (port <= 0) {
+            return;
+        }
+        try {
+            final DatagramSocket socket = new DatagramSocket(port);
+            final Thread thread = new Thread(() -> receive(socket), "WOLAgent.BeaconListener:" + port);
+            thread.setDaemon(true);
+            thread.start();
+            this.socket = socket;
+            LOGGER.log(Level.INFO, "Listening for beacons on UDP port {0}", port);
+        } catch (SocketException e) {
+            LOGGER.log(Level.WARNING, "Unable to listen for beacons on UDP port " + port, e);
+        }
+    }
+
+    public synchronized void close() {
+        if (socket != null) {
+            socket.close();
+            socket = null;
+        }
+    }
+
+    private void receive(DatagramSocket socket) {
+        final DatagramPacket packet = new DatagramPacket(new byte[MAX_LENGTH], MAX_LENGTH);
+        while (!socket.isClosed()) {
+            try {
+                packet.setLength(MAX_LENGTH);
+                socket.receive(packet);
+                handle(new String(packet.getData(), 0, packet.getLength(), StandardCharsets.UTF_8).trim(), packet.getAddress());
+            } catch (IOException e) {
+                if (!socket.isClosed()) {
+                    LOGGER.log(Level.WARNING, "Unable to receive beacon", e);
+                }
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Unable to handle beacon", e);
+            }
+        }
+    }
+
+    private void handle(String message, InetAddress sender) {
+        final String nodeName = accept(message, TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()));
+        if (nodeName == null) {
+            LOGGER.log(Level.FINE, "Ignoring beacon from {0}: {1}", new Object[]{sender.getHostAddress(), message});
+            return;
+        }
+        PresenceTracker.get().markAlive(nodeName);
+        if (ReachabilityPoller.get().signalReachable(nodeName)) {
+            LOGGER.log(Level.INFO, "Node {0} announced from {1} that it is up", new Object[]{nodeName, sender.getHostAddress()});
+        }
+    }
+
+    /**
+     * Validates a beacon.
+     *
+     * @param now the current time in epoch seconds
+     * @return the name of the announcing node, or {@code null} if the beacon is malformed, not signed, replayed,
+     * or does not match the MAC address of the node
+     */
+    @CheckForNull
+    String accept(String message, long now) {
+        final String[] parts = message.split(" ", 5);
+        if (parts.length != 5 || !PROTOCOL.equals(parts[0]) || parts[4].isEmpty()) {
+            return null;
+        }
+        final String mac = parts[1];
+        final String signature = parts[3];
+        final String nodeName = parts[4];
+        final long timestamp;
+        try {
+            timestamp = Long.parseLong(parts[2]);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        final byte[] key = secret;
+        if (key == null || timestamp <= notBefore || Math.abs(now - timestamp) > MAX_CLOCK_SKEW_SECONDS
+                || !isValidSignature(key, PROTOCOL + " " + mac + " " + timestamp + " " + nodeName, signature)) {
+            return null;
+        }
+        final Node node = Jenkins.get().getNode(nodeName);
+        if (!(node instanceof WOLSlave)) {
+            return null;
+        }
+        final long expectedMac = NeighborTable.packMac(StringUtils.defaultString(((WOLSlave) node).getMacAddress()));
+        if (expectedMac < 0L || expectedMac != NeighborTable.packMac(mac)) {
+            return null;
+        }
+        // Nodes send a few copies of the same beacon, only the first one counts.
+        // Beacons are handled by a single thread, so there is no race between the lookup and the update.
+        final Long previous = lastTimestamps.get(nodeName);
+        if (previous != null && previous >= timestamp) {
+            return null;
+        }
+        lastTimestamps.put(nodeName, timestamp);
+        return nodeName;
+    }
+
+    private static boolean isValidSignature(byte[] key, String content, String signature) {
+        try {
+            final Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(new SecretKeySpec(key, HMAC_ALGORITHM));
+            final byte[] expected = mac.doFinal(content.getBytes(StandardCharsets.UTF_8));
+            final StringBuilder hex = new StringBuilder(expected.length * 2);
+            for (byte b : expected) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return MessageDigest.isEqual(hex.toString().getBytes(StandardCharsets.US_ASCII), signature.toLowerCase(Locale.ROOT).getBytes(StandardCharsets.US_ASCII));
+        } catch (GeneralSecurityException e) {
+            LOGGER.log(Level.WARNING, "Unable to verify beacon signature", e);
+            return false;
+        }
+    }
+
+    public void remove(@Nonnull String nodeName) {
+        lastTimestamps.remove(nodeName);
+    }
+
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2019 Michel Kremer (kremi151)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package lu.kremi151.jenkins.wolagent.reachability;
+
+/**
+ * Percentiles of the wake-to-reachable duration of a node, in milliseconds.
+ */
+public final class BootTimeEstimate {
+
+    private final int sampleCount;
+    private final long p10;
+    private final long p50;
+    private final long p99;
+
+    public BootTimeEstimate(int sampleCount, long p10, long p50, long p99) {
+        this.sampleCount = sampleCount;
+        this.p10 = p10;
+        this.p50 = p50;
+        this.p99 = p99;
+    }
+
+    public int getSampleCount() {
+        return sampleCount;
+    }
+
+    public long getP10() {
+        return p10;
+    }
+
+    public long getP50() {
+        return p50;
+    }
+
+    public long getP99() {
+        return p99;
+    }
+
+    @Override
+    public String toString() {
+        return "p10=" + p10 + " ms, p50=" + p50 + " ms, p99=" + p99 + " ms over " + sampleCount + " wakes";
+    }
+
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2019 Michel Kremer (kremi151)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package lu.kremi151.jenkins.wolagent.reachability;
+
+import hudson.XmlFile;
+import jenkins.model.Jenkins;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Rolling window of the observed wake-to-reachable durations of each node, persisted on the controller.
+ * Nodes need a few samples before an estimate is available.
+ */
+public final class BootTimeModel {
+
+    private static final Logger LOGGER = java.util.logging.Logger.getLogger(BootTimeModel.class.getName());
+
+    private static final int WINDOW_SIZE = 50;
+    static final int MIN_SAMPLES = 5;
+
+    /**
+     * Nodes which were reachable faster than this were most likely awake already, so they do not tell anything about booting.
+     */
+    private static final long MIN_BOOT_MILLIS = 1000L;
+
+    private static final long SAVE_DELAY_SECONDS = 5L;
+
+    private static volatile BootTimeModel instance;
+
+    private final Map<String, Samples> samples = new ConcurrentHashMap<>();
+
+    private transient AtomicBoolean saveScheduled = new AtomicBoolean();
+
+    private BootTimeModel() {
+    }
+
+    @Nonnull
+    public static BootTimeModel get() {
+        BootTimeModel model = instance;
+        if (model == null) {
+            synchronized (BootTimeModel.class) {
+                model = instance;
+                if (model == null) {
+                    model = load();
+                    instance = model;
+                }
+            }
+        }
+        return model;
+    }
+
+    private static XmlFile getConfigFile() {
+        return new XmlFile(Jenkins.XSTREAM2, new File(Jenkins.get().getRootDir(), BootTimeModel.class.getName() + ".xml"));
+    }
+
+    private static BootTimeModel load() {
+        final XmlFile file = getConfigFile();
+        if (file.exists()) {
+            try {
+                return (BootTimeModel) file.read();
+            } catch (IOException | ClassCastException e) {
+                LOGGER.log(Level.WARNING, "Unable to load boot times from " + file, e);
+            }
+        }
+        return new BootTimeModel();
+    }
+
+    private Object readResolve() {
+        saveScheduled = new AtomicBoolean();
+        return this;
+    }
+
+    public void record(@Nonnull String nodeName, long millis) {
+        if (millis < MIN_BOOT_MILLIS) {
+            return;
+        }
+        samples.computeIfAbsent(nodeName, k -> new Samples()).add((int) Math.min(Integer.MAX_VALUE, millis));
+        scheduleSave();
+    }
+
+    public void remove(@Nonnull String nodeName) {
+        if (samples.remove(nodeName) != null) {
+            scheduleSave();
+        }
+    }
+
+    /**
+     * @return the boot time estimate of the given node, or {@code null} if not enough wakes have been observed yet
+     */
+    @CheckForNull
+    public BootTimeEstimate getEstimate(@Nonnull String nodeName) {
+        final Samples nodeSamples = samples.get(nodeName);
+        return nodeSamples == null ? null : nodeSamples.estimate();
+    }
+
+    // Saves are coalesced, since a mass wake records many samples at once
+    private void scheduleSave() {
+        if (!saveScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            ReachabilityPoller.get().getExecutor().schedule(this::save, SAVE_DELAY_SECONDS, TimeUnit.SECONDS);
+        } catch (RejectedExecutionException e) {
+            save();
+        }
+    }
+
+    private void save() {
+        saveScheduled.set(false);
+        try {
+            getConfigFile().write(this);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Unable to persist boot times", e);
+        }
+    }
+
+    private static final class Samples {
+
+        private final int[] millis = new int[WINDOW_SIZE];
+        private int count;
+        private int next;
+
+        private synchronized void add(int value) {
+            millis[next] = value;
+            next = (next + 1) % WINDOW_SIZE;
+            count = Math.min(count + 1, WINDOW_SIZE);
+        }
+
+        @CheckForNull
+        private synchronized BootTimeEstimate estimate() {
+            if (count < MIN_SAMPLES) {
+                return null;
+            }
+            final int[] sorted = Arrays.copyOf(millis, count);
+            Arrays.sort(sorted);
+            return new BootTimeEstimate(count, percentile(sorted, 0.1), percentile(sorted, 0.5), percentile(sorted, 0.99));
+        }
+
+        private static long percentile(int[] sorted, double quantile) {
+            final int rank = (int) Math.ceil(quantile * sorted.length);
+            return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+        }
+
+    }
+
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2019 Michel Kremer (kremi151)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package lu.kremi151.jenkins.wolagent.reachability;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Pings the node. {@link InetAddress#isReachable(int)} blocks a thread of the given executor for up to the timeout.
+ */
+class IcmpCheck implements ReachabilityCheck {
+
+    private static final Logger LOGGER = java.util.logging.Logger.getLogger(IcmpCheck.class.getName());
+
+    private final InetAddress address;
+    private final int timeout;
+
+    IcmpCheck(InetAddress address, int timeout) {
+        this.address = address;
+        this.timeout = timeout;
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<Boolean> attempt(@Nonnull ScheduledExecutorService executor) {
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return address.isReachable(timeout);
+                } catch (IOException e) {
+                    LOGGER.log(Level.FINE, "Pinging " + address + " failed", e);
+                    return false;
+                }
+            }, executor);
+        } catch (RejectedExecutionException e) {
+            // Shutting down
+            return CompletableFuture.completedFuture(false);
+        }
+    }
+
+    @Override
+    public boolean isBlocking() {
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "ICMP " + address.getHostAddress();
+    }
+
+}
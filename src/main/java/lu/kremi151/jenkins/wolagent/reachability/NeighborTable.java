@@ -0,0 +1,315 @@
+/*
+ * Copyright 2019 Michel Kremer (kremi151)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package lu.kremi151.jenkins.wolagent.reachability;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.Reader;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The IPv4 neighbor table of the kernel as exposed by {@code /proc/net/arp} on Linux, telling whether the NIC of a node
+ * answered ARP without sending anything. One read is cached for a short time and answers for all nodes.
+ * <p>
+ * Entries only exist for on-link neighbors the controller talked to, and complete entries may be stale, so the table
+ * is only used to skip probes of nodes whose resolution failed.
+ */
+public final class NeighborTable {
+
+    private static final Logger LOGGER = java.util.logging.Logger.getLogger(NeighborTable.class.getName());
+
+    private static final String PATH = System.getProperty(NeighborTable.class.getName() + ".path", "/proc/net/arp");
+    private static final long TTL = Long.getLong(NeighborTable.class.getName() + ".ttl", 1000L);
+
+    /**
+     * {@code ATF_COM} from {@code if_arp.h}, set once the hardware address is resolved.
+     */
+    private static final int FLAG_COMPLETE = 0x02;
+
+    private static final int COLUMN_ADDRESS = 0;
+    private static final int COLUMN_FLAGS = 2;
+    private static final int COLUMN_HW_ADDRESS = 3;
+    private static final int COLUMN_DEVICE = 5;
+    private static final int COLUMNS = 6;
+
+    private static final NeighborTable SYSTEM = new NeighborTable(Paths.get(PATH), TTL);
+
+    public enum State {
+        /**
+         * The MAC address of the node is resolved.
+         */
+        UP,
+        /**
+         * The kernel failed to resolve the address of the node.
+         */
+        DOWN,
+        /**
+         * The table does not know the node, e.g. because it is not on-link or the entry expired.
+         */
+        UNKNOWN
+    }
+
+    private final Path path;
+    private final long ttlNanos;
+
+    private volatile Snapshot snapshot;
+
+    public NeighborTable(@Nonnull Path path, long ttlMillis) {
+        this.path = path;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0L, ttlMillis));
+    }
+
+    /**
+     * @return the neighbor table of the controller
+     */
+    @Nonnull
+    public static NeighborTable get() {
+        return SYSTEM;
+    }
+
+    public boolean isAvailable() {
+        return Files.isReadable(path);
+    }
+
+    /**
+     * @param macAddress the MAC address of the node, in the notation accepted by the plugin
+     * @param address    the last known address of the node, used for unresolved entries which carry no MAC address
+     */
+    @Nonnull
+    public State getState(@Nonnull String macAddress, @CheckForNull InetAddress address) {
+        final Snapshot current;
+        try {
+            current = current();
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Unable to read neighbor table from " + path, e);
+            return State.UNKNOWN;
+        }
+        return current.getState(macAddress, address);
+    }
+
+    @Nonnull
+    public Snapshot current() throws IOException {
+        Snapshot current = snapshot;
+        if (current == null || System.nanoTime() - current.readNanos > ttlNanos) {
+            synchronized (this) {
+                current = snapshot;
+                if (current == null || System.nanoTime() - current.readNanos > ttlNanos) {
+                    try (Reader reader = Files.newBufferedReader(path, StandardCharsets.US_ASCII)) {
+                        current = parse(reader);
+                    }
+                    snapshot = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Parses a table in the format of {@code /proc/net/arp} in a single pass, without splitting lines into strings.
+     * The header line and malformed lines are skipped.
+     */
+    @Nonnull
+    public static Snapshot parse(@Nonnull Reader reader) throws IOException {
+        final Snapshot result = new Snapshot();
+        final StringBuilder[] columns = new StringBuilder[COLUMNS];
+        for (int i = 0; i < COLUMNS; i++) {
+            columns[i] = new StringBuilder(24);
+        }
+        final char[] buffer = new char[8192];
+        boolean header = true;
+        int column = 0;
+        boolean inColumn = false;
+        int read;
+        while ((read = reader.read(buffer)) >= 0) {
+            for (int i = 0; i < read; i++) {
+                final char c = buffer[i];
+                if (c == '\n') {
+                    if (!header) {
+                        result.add(columns, inColumn ? column + 1 : column);
+                    }
+                    header = false;
+                    for (int j = 0; j < COLUMNS; j++) {
+                        columns[j].setLength(0);
+                    }
+                    column = 0;
+                    inColumn = false;
+                } else if (header) {
+                    continue;
+                } else if (c == ' ' || c == '\t' || c == '\r') {
+                    if (inColumn) {
+                        column++;
+                        inColumn = false;
+                    }
+                } else if (column < COLUMNS) {
+                    columns[column].append(c);
+                    inColumn = true;
+                }
+            }
+        }
+        if (!header) {
+            result.add(columns, inColumn ? column + 1 : column);
+        }
+        return result;
+    }
+
+    /**
+     * Packs a MAC address into the lower 48 bits of a long, accepting any separator between the hex pairs.
+     *
+     * @return the packed address, or {@code -1} if it is malformed
+     */
+    static long packMac(CharSequence mac) {
+        long packed = 0L;
+        int digits = 0;
+        for (int i = 0; i < mac.length(); i++) {
+            final int digit = Character.digit(mac.charAt(i), 16);
+            if (digit >= 0) {
+                packed = (packed << 4) | digit;
+                digits++;
+            } else if (digits % 2 != 0) {
+                return -1L;
+            }
+        }
+        return digits == 12 ? packed : -1L;
+    }
+
+    public static final class Entry {
+
+        private final String address;
+        private final long mac;
+        private final int flags;
+        private final String device;
+
+        private Entry(String address, long mac, int flags, String device) {
+            this.address = address;
+            this.mac = mac;
+            this.flags = flags;
+            this.device = device;
+        }
+
+        public String getAddress() {
+            return address;
+        }
+
+        public int getFlags() {
+            return flags;
+        }
+
+        public String getDevice() {
+            return device;
+        }
+
+        public boolean isComplete() {
+            return (flags & FLAG_COMPLETE) != 0 && mac != 0L;
+        }
+
+        @Override
+        public String toString() {
+            return address + " (" + (isComplete() ? String.format("%012x", mac) : "incomplete") + ", " + device + ")";
+        }
+
+    }
+
+    /**
+     * A parsed table, indexed by MAC address for complete entries and by IP address for all entries.
+     */
+    public static final class Snapshot {
+
+        private final long readNanos = System.nanoTime();
+        private final Map<Long, Entry> byMac = new HashMap<>();
+        private final Map<String, Entry> byAddress = new HashMap<>();
+
+        private Snapshot() {
+        }
+
+        private void add(StringBuilder[] columns, int count) {
+            if (count < COLUMN_HW_ADDRESS + 1) {
+                return;
+            }
+            final int flags = parseFlags(columns[COLUMN_FLAGS]);
+            final long mac = packMac(columns[COLUMN_HW_ADDRESS]);
+            if (flags < 0 || mac < 0L) {
+                return;
+            }
+            final Entry entry = new Entry(
+                    columns[COLUMN_ADDRESS].toString(),
+                    mac,
+                    flags,
+                    count > COLUMN_DEVICE ? columns[COLUMN_DEVICE].toString() : ""
+            );
+            byAddress.put(entry.address, entry);
+            if (entry.isComplete()) {
+                byMac.put(mac, entry);
+            }
+        }
+
+        private static int parseFlags(CharSequence flags) {
+            int start = 0;
+            if (flags.length() > 2 && flags.charAt(0) == '0' && (flags.charAt(1) == 'x' || flags.charAt(1) == 'X')) {
+                start = 2;
+            }
+            int value = 0;
+            for (int i = start; i < flags.length(); i++) {
+                final int digit = Character.digit(flags.charAt(i), 16);
+                if (digit < 0 || value > 0xffffff) {
+                    return -1;
+                }
+                value = (value << 4) | digit;
+            }
+            return start < flags.length() ? value : -1;
+        }
+
+        @CheckForNull
+        public Entry getByMac(@Nonnull String macAddress) {
+            final long mac = packMac(macAddress);
+            return mac < 0L ? null : byMac.get(mac);
+        }
+
+        @CheckForNull
+        public Entry getByAddress(@Nonnull String address) {
+            return byAddress.get(address);
+        }
+
+        public int size() {
+            return byAddress.size();
+        }
+
+        @Nonnull
+        public State getState(@Nonnull String macAddress, @CheckForNull InetAddress address) {
+            if (getByMac(macAddress) != null) {
+                return State.UP;
+            }
+            if (address == null) {
+                return State.UNKNOWN;
+            }
+            final Entry entry = byAddress.get(address.getHostAddress());
+            // A complete entry with another MAC address means the address was handed to another machine
+            return entry != null && !entry.isComplete() ? State.DOWN : State.UNKNOWN;
+        }
+
+    }
+
+}
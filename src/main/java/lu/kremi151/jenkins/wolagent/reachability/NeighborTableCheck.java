@@ -0,0 +1,72 @@
+/*
+ * Copyright 2019 Michel Kremer (kremi151)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package lu.kremi151.jenkins.wolagent.reachability;
+
+import javax.annotation.Nonnull;
+import java.net.InetAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Answers from the {@link NeighborTable} while the kernel reports the node as unresolved, and only runs the wrapped
+ * check otherwise. While the node is down no packet is sent, except for one attempt every {@code maxSkip} milliseconds.
+ */
+public class NeighborTableCheck implements ReachabilityCheck {
+
+    private final NeighborTable table;
+    private final String macAddress;
+    private final InetAddress address;
+    private final ReachabilityCheck delegate;
+    private final long maxSkipNanos;
+
+    private volatile long lastDelegateNanos = System.nanoTime();
+
+    /**
+     * @param maxSkip how long attempts may be answered from the table before the wrapped check runs anyway,
+     *                in milliseconds, or {@link Long#MAX_VALUE} to trust the table as long as it reports the node as down
+     */
+    public NeighborTableCheck(NeighborTable table, String macAddress, InetAddress address, ReachabilityCheck delegate, long maxSkip) {
+        this.table = table;
+        this.macAddress = macAddress;
+        this.address = address;
+        this.delegate = delegate;
+        this.maxSkipNanos = TimeUnit.MILLISECONDS.toNanos(maxSkip);
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<Boolean> attempt(@Nonnull ScheduledExecutorService executor) {
+        final long now = System.nanoTime();
+        if (table.getState(macAddress, address) == NeighborTable.State.DOWN && now - lastDelegateNanos < maxSkipNanos) {
+            return CompletableFuture.completedFuture(false);
+        }
+        lastDelegateNanos = now;
+        return delegate.attempt(executor);
+    }
+
+    @Override
+    public boolean isBlocking() {
+        return delegate.isBlocking();
+    }
+
+    @Override
+    public String toString() {
+        return delegate + " (skipped while unresolved in the neighbor table)";
+    }
+
+}
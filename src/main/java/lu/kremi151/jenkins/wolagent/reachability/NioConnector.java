@@ -0,0 +1,202 @@
+/*
+ * Copyright 2019 Michel Kremer (kremi151)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package lu.kremi151.jenkins.wolagent.reachability;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Performs non-blocking TCP connects for all waking nodes on a single selector thread.
+ */
+final class NioConnector implements Runnable {
+
+    private static final Logger LOGGER = java.util.logging.Logger.getLogger(NioConnector.class.getName());
+
+    private static volatile NioConnector instance;
+
+    private final Selector selector;
+    private final Queue<PendingConnect> registrations = new ConcurrentLinkedQueue<>();
+    private final Thread thread;
+
+    private NioConnector() throws IOException {
+        this.selector = Selector.open();
+        this.thread = new Thread(this, "WOLAgent.NioConnector");
+        this.thread.setDaemon(true);
+    }
+
+    @Nonnull
+    static NioConnector get() {
+        NioConnector connector = instance;
+        if (connector == null) {
+            synchronized (NioConnector.class) {
+                connector = instance;
+                if (connector == null) {
+                    try {
+                        connector = new NioConnector();
+                    } catch (IOException e) {
+                        throw new IllegalStateException("Unable to open selector", e);
+                    }
+                    connector.thread.start();
+                    instance = connector;
+                }
+            }
+        }
+        return connector;
+    }
+
+    static void shutdown() {
+        final NioConnector connector;
+        synchronized (NioConnector.class) {
+            connector = instance;
+            instance = null;
+        }
+        if (connector != null) {
+            try {
+                connector.selector.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Unable to close selector", e);
+            }
+        }
+    }
+
+    /**
+     * Tries to open a TCP connection to the given address and closes it right away.
+     * The returned future completes with {@code true} if the connection got accepted within {@code timeout} milliseconds.
+     */
+    @Nonnull
+    CompletableFuture<Boolean> connect(InetSocketAddress address, int timeout, ScheduledExecutorService timer) {
+        final CompletableFuture<Boolean> result = new CompletableFuture<>();
+        SocketChannel channel = null;
+        try {
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            if (channel.connect(address)) {
+                closeQuietly(channel);
+                result.complete(true);
+                return result;
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Connecting to " + address + " failed", e);
+            if (channel != null) {
+                closeQuietly(channel);
+            }
+            result.complete(false);
+            return result;
+        }
+
+        final SocketChannel connecting = channel;
+        result.whenComplete((reachable, t) -> closeQuietly(connecting));
+        final ScheduledFuture<?> timeoutFuture;
+        try {
+            timeoutFuture = timer.schedule(() -> result.complete(false), timeout, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            LOGGER.log(Level.FINE, "Unable to schedule connect timeout for " + address, e);
+            result.complete(false);
+            return result;
+        }
+        result.whenComplete((reachable, t) -> timeoutFuture.cancel(false));
+        registrations.add(new PendingConnect(connecting, result));
+        if (selector.isOpen()) {
+            selector.wakeup();
+        } else {
+            // Shut down, the selector loop will not pick up the registration anymore
+            result.complete(false);
+        }
+        return result;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (selector.isOpen()) {
+                selector.select();
+                registerPending();
+                final Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    final SelectionKey key = it.next();
+                    it.remove();
+                    finishConnect(key);
+                }
+            }
+        } catch (ClosedSelectorException e) {
+            // Shutting down
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Selector loop failed", e);
+        } finally {
+            PendingConnect pending;
+            while ((pending = registrations.poll()) != null) {
+                pending.result.complete(false);
+            }
+        }
+    }
+
+    private void registerPending() {
+        PendingConnect pending;
+        while ((pending = registrations.poll()) != null) {
+            if (pending.result.isDone()) {
+                continue;
+            }
+            try {
+                pending.channel.register(selector, SelectionKey.OP_CONNECT, pending.result);
+            } catch (IOException e) {
+                pending.result.complete(false);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void finishConnect(SelectionKey key) {
+        final CompletableFuture<Boolean> result = (CompletableFuture<Boolean>) key.attachment();
+        key.cancel();
+        try {
+            result.complete(((SocketChannel) key.channel()).finishConnect());
+        } catch (IOException e) {
+            result.complete(false);
+        }
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Unable to close socket channel", e);
+        }
+    }
+
+    private static final class PendingConnect {
+
+        private final SocketChannel channel;
+        private final CompletableFuture<Boolean> result;
+
+        private PendingConnect(SocketChannel channel, CompletableFuture<Boolean> result) {
+            this.channel = channel;
+            this.result = result;
+        }
+
+    }
+
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright 2019 Michel Kremer (kremi151)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package lu.kremi151.jenkins.wolagent.reachability;
+
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.Computer;
+import hudson.model.TaskListener;
+import hudson.slaves.ComputerLauncher;
+import hudson.slaves.ComputerListener;
+import hudson.slaves.OfflineCause;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.model.Jenkins;
+import lu.kremi151.jenkins.wolagent.WOLGlobalConfiguration;
+import lu.kremi151.jenkins.wolagent.launcher.WOLLauncher;
+import lu.kremi151.jenkins.wolagent.slave.WOLSlaveComputer;
+import lu.kremi151.jenkins.wolagent.wake.WakeRegistry;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Remembers when each node was last seen alive, from channel events and from cheap periodic probes of offline nodes.
+ * Launching a node which was seen recently can skip the wake, e.g. after a controller restart or a dropped channel.
+ */
+public final class PresenceTracker {
+
+    private static final Logger LOGGER = java.util.logging.Logger.getLogger(PresenceTracker.class.getName());
+
+    private static final long PROBE_INTERVAL = Long.getLong(PresenceTracker.class.getName() + ".probeInterval", 60000L);
+    private static final int PROBE_TIMEOUT = Integer.getInteger(PresenceTracker.class.getName() + ".probeTimeout", 1000);
+
+    /**
+     * Sightings older than this are not trusted anymore, it covers one missed probe.
+     */
+    private static final long FRESHNESS_NANOS = TimeUnit.MILLISECONDS.toNanos(
+            Long.getLong(PresenceTracker.class.getName() + ".freshness", 2 * PROBE_INTERVAL));
+
+    private static volatile PresenceTracker instance;
+
+    private final Map<String, Sighting> sightings = new ConcurrentHashMap<>();
+
+    /**
+     * Probes are scheduled on their own threads, so probing all nodes at once does not delay the polls of waking nodes.
+     */
+    private final ScheduledThreadPoolExecutor probeExecutor;
+
+    private PresenceTracker() {
+        this.probeExecutor = new ScheduledThreadPoolExecutor(
+                2,
+                new NamingThreadFactory(new DaemonThreadFactory(), "WOLAgent.PresenceTracker")
+        );
+        this.probeExecutor.setRemoveOnCancelPolicy(true);
+    }
+
+    @Nonnull
+    public static PresenceTracker get() {
+        PresenceTracker tracker = instance;
+        if (tracker == null) {
+            synchronized (PresenceTracker.class) {
+                tracker = instance;
+                if (tracker == null) {
+                    tracker = new PresenceTracker();
+                    instance = tracker;
+                }
+            }
+        }
+        return tracker;
+    }
+
+    public static void shutdown() {
+        final PresenceTracker tracker;
+        synchronized (PresenceTracker.class) {
+            tracker = instance;
+            instance = null;
+        }
+        if (tracker != null) {
+            tracker.probeExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return the timeout of a single presence check in milliseconds
+     */
+    public static int getProbeTimeout() {
+        return PROBE_TIMEOUT;
+    }
+
+    @Nonnull
+    public ScheduledExecutorService getExecutor() {
+        return probeExecutor;
+    }
+
+    /**
+     * Records that the node answered right now.
+     */
+    public void markAlive(@Nonnull String nodeName) {
+        sightings.put(nodeName, new Sighting(System.nanoTime(), false));
+    }
+
+    /**
+     * Records that the node went down or did not answer, so it is not considered alive until it is seen again.
+     */
+    public void markGone(@Nonnull String nodeName) {
+        sightings.put(nodeName, new Sighting(System.nanoTime(), true));
+    }
+
+    /**
+     * Records that the channel of the node was closed. The node was alive up to now, unless it was told to go down.
+     */
+    public void channelClosed(@Nonnull String nodeName) {
+        sightings.compute(nodeName, (name, sighting) -> sighting != null && sighting.gone
+                ? sighting
+                : new Sighting(System.nanoTime(), false));
+    }
+
+    /**
+     * @return the number of milliseconds since the node was last seen alive, or {@code -1} if it is not considered alive
+     */
+    public long getAliveAge(@Nonnull String nodeName) {
+        final Sighting sighting = sightings.get(nodeName);
+        if (sighting == null || sighting.gone) {
+            return -1L;
+        }
+        final long age = System.nanoTime() - sighting.nanos;
+        return age <= FRESHNESS_NANOS ? TimeUnit.NANOSECONDS.toMillis(age) : -1L;
+    }
+
+    public boolean isRecentlyAlive(@Nonnull String nodeName) {
+        return getAliveAge(nodeName) >= 0L;
+    }
+
+    public void remove(@Nonnull String nodeName) {
+        sightings.remove(nodeName);
+    }
+
+    @CheckForNull
+    private CompletableFuture<Boolean> probe(WOLSlaveComputer computer) {
+        final ComputerLauncher launcher = computer.getLauncher();
+        if (!(launcher instanceof WOLLauncher)) {
+            return null;
+        }
+        final ReachabilityCheck check = ((WOLLauncher) launcher).createPresenceCheck(computer, PROBE_TIMEOUT);
+        if (check == null) {
+            return null;
+        }
+        final String nodeName = computer.getName();
+        return check.attempt(probeExecutor).whenComplete((alive, t) -> {
+            if (t != null) {
+                LOGGER.log(Level.FINE, "Presence check " + check + " of node " + nodeName + " failed", t);
+            }
+            // Offline nodes which started to connect meanwhile are tracked through their channel
+            if (Boolean.TRUE.equals(alive)) {
+                markAlive(nodeName);
+            } else if (computer.isOffline() && !computer.isConnecting()) {
+                markGone(nodeName);
+            }
+        });
+    }
+
+    private static final class Sighting {
+
+        private final long nanos;
+        private final boolean gone;
+
+        private Sighting(long nanos, boolean gone) {
+            this.nanos = nanos;
+            this.gone = gone;
+        }
+
+    }
+
+    /**
+     * Probes the offline nodes which are not being woken up, online nodes are known to be alive through their channel.
+     */
+    @Extension
+    public static class ProbeWork extends AsyncPeriodicWork {
+
+        public ProbeWork() {
+            super("WOL agent presence probes");
+        }
+
+        @Override
+        public long getRecurrencePeriod() {
+            return PROBE_INTERVAL;
+        }
+
+        @Override
+        protected void execute(TaskListener listener) {
+            if (!WOLGlobalConfiguration.get().isTrackPresence()) {
+                return;
+            }
+            final PresenceTracker tracker = get();
+            final List<CompletableFuture<Boolean>> probes = new ArrayList<>();
+            for (Computer c : Jenkins.get().getComputers()) {
+                if (!(c instanceof WOLSlaveComputer)) {
+                    continue;
+                }
+                if (c.isOnline()) {
+                    tracker.markAlive(c.getName());
+                } else if (!c.isConnecting() && !WakeRegistry.get().isWaking(c.getName())) {
+                    final CompletableFuture<Boolean> probe = tracker.probe((WOLSlaveComputer) c);
+                    if (probe != null) {
+                        probes.add(probe);
+                    }
+                }
+            }
+            // Runs do not overlap, so waiting here keeps slow probes from piling up
+            CompletableFuture.allOf(probes.toArray(new CompletableFuture[0])).exceptionally(t -> null).join();
+        }
+
+    }
+
+    @Extension
+    public static class PresenceComputerListener extends ComputerListener {
+
+        @Override
+        public void onOnline(Computer c, TaskListener listener) {
+            if (c instanceof WOLSlaveComputer) {
+                get().markAlive(c.getName());
+            }
+        }
+
+        @Override
+        public void onOffline(@Nonnull Computer c, @CheckForNull OfflineCause cause) {
+            if (c instanceof WOLSlaveComputer) {
+                get().channelClosed(c.getName());
+            }
+        }
+
+        @Override
+        public void onLaunchFailure(Computer c, TaskListener taskListener) {
+            if (c instanceof WOLSlaveComputer) {
+                get().markGone(c.getName());
+            }
+        }
+
+    }
+
+}
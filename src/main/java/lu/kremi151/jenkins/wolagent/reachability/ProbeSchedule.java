@@ -0,0 +1,93 @@
+/*
+ * Copyright 2019 Michel Kremer (kremi151)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package lu.kremi151.jenkins.wolagent.reachability;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Decides how long to wait before the next reachability check of a waking node.
+ */
+public abstract class ProbeSchedule {
+
+    /**
+     * Lower bound of the interval between checks near the expected ready time.
+     */
+    private static final long MIN_DENSE_INTERVAL = 250L;
+
+    private static final long MIN_TIMEOUT_MARGIN = 10000L;
+
+    /**
+     * @param elapsed milliseconds since the node was woken up
+     * @return milliseconds to wait before the next check
+     */
+    public abstract long nextDelay(long elapsed);
+
+    @Nonnull
+    public static ProbeSchedule fixed(final long interval) {
+        return new ProbeSchedule() {
+            @Override
+            public long nextDelay(long elapsed) {
+                return interval;
+            }
+
+            @Override
+            public String toString() {
+                return "every " + interval + " ms";
+            }
+        };
+    }
+
+    /**
+     * Probes sparsely while the node cannot be up yet, halving the remaining time to the earliest observed boot time,
+     * and densely from then on.
+     *
+     * @param maxInterval the configured ping interval, never exceeded once the node may be up
+     */
+    @Nonnull
+    public static ProbeSchedule adaptive(@Nonnull final BootTimeEstimate estimate, final long maxInterval) {
+        final long earliest = estimate.getP10();
+        final long dense = Math.max(1L, Math.min(maxInterval, Math.max(MIN_DENSE_INTERVAL, estimate.getP50() / 20)));
+        return new ProbeSchedule() {
+            @Override
+            public long nextDelay(long elapsed) {
+                final long remaining = earliest - elapsed;
+                if (remaining <= dense) {
+                    return dense;
+                }
+                return Math.max(dense, remaining / 2);
+            }
+
+            @Override
+            public String toString() {
+                return "sparse until " + earliest + " ms, then every " + dense + " ms";
+            }
+        };
+    }
+
+    /**
+     * Boot times are only learned from successful wakes, so a timeout derived from them alone would keep failing
+     * wakes of a node which boots slower than it used to. The configured timeout therefore stays the lower bound.
+     *
+     * @param connectionTimeout the configured timeout in milliseconds
+     * @return the 99th percentile boot time plus a margin of half of it, and at least 10 seconds,
+     * or the configured timeout if it is longer
+     */
+    public static long adaptiveTimeout(@Nonnull BootTimeEstimate estimate, long connectionTimeout) {
+        return Math.max(connectionTimeout, estimate.getP99() + Math.max(MIN_TIMEOUT_MARGIN, estimate.getP99() / 2));
+    }
+
+}
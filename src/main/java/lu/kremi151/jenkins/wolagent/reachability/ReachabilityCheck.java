@@ -0,0 +1,43 @@
+/*
+ * Copyright 2019 Michel Kremer (kremi151)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package lu.kremi151.jenkins.wolagent.reachability;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * A single reachability attempt, repeated by the {@link ReachabilityPoller} until it succeeds.
+ */
+public interface ReachabilityCheck {
+
+    /**
+     * Starts one attempt and returns a future completing with {@code true} if the host answered.
+     * Blocking checks must run on the given executor rather than on the calling thread.
+     */
+    @Nonnull
+    CompletableFuture<Boolean> attempt(@Nonnull ScheduledExecutorService executor);
+
+    /**
+     * @return whether attempts block a thread of the given executor for up to their timeout, in which case callers
+     * hand them an executor of their own, so they do not hold up non-blocking checks
+     */
+    default boolean isBlocking() {
+        return false;
+    }
+
+}
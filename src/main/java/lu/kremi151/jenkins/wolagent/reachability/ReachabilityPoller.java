@@ -0,0 +1,245 @@
+/*
+ * Copyright 2019 Michel Kremer (kremi151)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package lu.kremi151.jenkins.wolagent.reachability;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+import javax.annotation.Nonnull;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Plugin-wide scheduler polling waking nodes until they become reachable.
+ * All nodes share the same bounded pool, so the number of threads does not grow with the number of waking nodes.
+ * Blocking checks, such as ICMP, run on a second pool instead, which grows with the number of nodes polled through
+ * such checks up to a limit, so each node keeps being checked every ping interval.
+ */
+public final class ReachabilityPoller {
+
+    private static final Logger LOGGER = java.util.logging.Logger.getLogger(ReachabilityPoller.class.getName());
+
+    private static final int POOL_SIZE = Integer.getInteger(ReachabilityPoller.class.getName() + ".poolSize", 4);
+    private static final int MAX_BLOCKING_POOL_SIZE = Integer.getInteger(ReachabilityPoller.class.getName() + ".maxBlockingPoolSize", 64);
+
+    private static volatile ReachabilityPoller instance;
+
+    private final ScheduledThreadPoolExecutor scheduler;
+
+    /**
+     * Runs checks which block for up to their timeout, such as ICMP, so they do not occupy the scheduler.
+     * A node is never checked twice at once, so one thread per polled node is enough.
+     */
+    private final ScheduledThreadPoolExecutor blockingScheduler;
+
+    private int blockingPolls;
+
+    private final ConcurrentMap<String, Set<PollTask>> awaitingReachable = new ConcurrentHashMap<>();
+
+    private ReachabilityPoller() {
+        this.scheduler = new ScheduledThreadPoolExecutor(
+                Math.max(1, POOL_SIZE),
+                new NamingThreadFactory(new DaemonThreadFactory(), "WOLAgent.ReachabilityPoller")
+        );
+        this.scheduler.setRemoveOnCancelPolicy(true);
+        this.blockingScheduler = new ScheduledThreadPoolExecutor(
+                1,
+                new NamingThreadFactory(new DaemonThreadFactory(), "WOLAgent.ReachabilityPoller.blocking")
+        );
+        this.blockingScheduler.setRemoveOnCancelPolicy(true);
+        this.blockingScheduler.setKeepAliveTime(60L, TimeUnit.SECONDS);
+    }
+
+    @Nonnull
+    public static ReachabilityPoller get() {
+        ReachabilityPoller poller = instance;
+        if (poller == null) {
+            synchronized (ReachabilityPoller.class) {
+                poller = instance;
+                if (poller == null) {
+                    poller = new ReachabilityPoller();
+                    instance = poller;
+                }
+            }
+        }
+        return poller;
+    }
+
+    public static void shutdown() {
+        final ReachabilityPoller poller;
+        synchronized (ReachabilityPoller.class) {
+            poller = instance;
+            instance = null;
+        }
+        if (poller != null) {
+            poller.scheduler.shutdownNow();
+            poller.blockingScheduler.shutdownNow();
+        }
+        NioConnector.shutdown();
+    }
+
+    /**
+     * @return the shared executor, for short tasks which have to run alongside the reachability checks
+     */
+    @Nonnull
+    public ScheduledExecutorService getExecutor() {
+        return scheduler;
+    }
+
+    /**
+     * Repeats the given check every {@code pingInterval} milliseconds until it succeeds.
+     * The returned future fails with a {@link TimeoutException} once {@code timeout} milliseconds have elapsed.
+     * Cancelling the returned future stops the polling.
+     */
+    @Nonnull
+    public CompletableFuture<Void> awaitReachable(String nodeName, ReachabilityCheck check, int pingInterval, long timeout) {
+        return await(nodeName, check, true, ProbeSchedule.fixed(pingInterval), timeout);
+    }
+
+    /**
+     * Like {@link #awaitReachable(String, ReachabilityCheck, int, long)}, with the delays between checks given by a schedule.
+     */
+    @Nonnull
+    public CompletableFuture<Void> awaitReachable(String nodeName, ReachabilityCheck check, ProbeSchedule schedule, long timeout) {
+        return await(nodeName, check, true, schedule, timeout);
+    }
+
+    /**
+     * Repeats the given check every {@code pingInterval} milliseconds until it fails, e.g. to confirm a node went to sleep.
+     * The returned future fails with a {@link TimeoutException} if the node is still reachable after {@code timeout} milliseconds.
+     */
+    @Nonnull
+    public CompletableFuture<Void> awaitUnreachable(String nodeName, ReachabilityCheck check, int pingInterval, long timeout) {
+        return await(nodeName, check, false, ProbeSchedule.fixed(pingInterval), timeout);
+    }
+
+    /**
+     * Completes the pending waits for the given node to become reachable, e.g. because the node announced it is up.
+     *
+     * @return whether a wait was pending
+     */
+    public boolean signalReachable(String nodeName) {
+        final Set<PollTask> tasks = awaitingReachable.get(nodeName);
+        boolean signalled = false;
+        if (tasks != null) {
+            for (PollTask task : tasks) {
+                signalled |= task.result.complete(null);
+            }
+        }
+        return signalled;
+    }
+
+    private CompletableFuture<Void> await(String nodeName, ReachabilityCheck check, boolean reachable, ProbeSchedule probeSchedule, long timeout) {
+        final PollTask task = new PollTask(nodeName, check, reachable, probeSchedule);
+        if (check.isBlocking()) {
+            resizeBlockingPool(1);
+            task.result.whenComplete((v, t) -> resizeBlockingPool(-1));
+        }
+        if (reachable) {
+            awaitingReachable.compute(nodeName, (name, tasks) -> {
+                final Set<PollTask> result = tasks == null ? ConcurrentHashMap.newKeySet() : tasks;
+                result.add(task);
+                return result;
+            });
+            task.result.whenComplete((v, t) -> awaitingReachable.computeIfPresent(nodeName, (name, tasks) -> {
+                tasks.remove(task);
+                return tasks.isEmpty() ? null : tasks;
+            }));
+        }
+        try {
+            final String state = reachable ? "become reachable" : "become unreachable";
+            final ScheduledFuture<?> timeoutFuture = scheduler.schedule(
+                    () -> task.result.completeExceptionally(new TimeoutException("Node " + nodeName + " did not " + state + " within " + timeout + " ms")),
+                    timeout,
+                    TimeUnit.MILLISECONDS
+            );
+            task.result.whenComplete((v, t) -> {
+                timeoutFuture.cancel(false);
+                task.cancelPending();
+            });
+            task.schedule(0L);
+        } catch (RejectedExecutionException e) {
+            task.result.completeExceptionally(e);
+        }
+        return task.result;
+    }
+
+    private synchronized void resizeBlockingPool(int delta) {
+        blockingPolls += delta;
+        // Threads above the new size exit once idle
+        blockingScheduler.setCorePoolSize(Math.max(1, Math.min(blockingPolls, MAX_BLOCKING_POOL_SIZE)));
+    }
+
+    private final class PollTask implements Runnable {
+
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+        private final String nodeName;
+        private final ReachabilityCheck check;
+        private final boolean expected;
+        private final ProbeSchedule probeSchedule;
+        private final long startNanos = System.nanoTime();
+
+        private volatile ScheduledFuture<?> pending;
+
+        private PollTask(String nodeName, ReachabilityCheck check, boolean expected, ProbeSchedule probeSchedule) {
+            this.nodeName = nodeName;
+            this.check = check;
+            this.expected = expected;
+            this.probeSchedule = probeSchedule;
+        }
+
+        @Override
+        public void run() {
+            if (result.isDone()) {
+                return;
+            }
+            check.attempt(check.isBlocking() ? blockingScheduler : scheduler).whenComplete((reachable, t) -> {
+                if (t != null) {
+                    LOGGER.log(Level.FINE, "Reachability check " + check + " for node " + nodeName + " failed", t);
+                }
+                // A check which failed counts as a failed attempt, i.e. the node did not answer
+                if (Boolean.TRUE.equals(reachable) == expected) {
+                    result.complete(null);
+                } else {
+                    schedule(probeSchedule.nextDelay(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos)));
+                }
+            });
+        }
+
+        private void schedule(long delay) {
+            if (result.isDone()) {
+                return;
+            }
+            try {
+                pending = scheduler.schedule(this, delay, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                result.completeExceptionally(e);
+            }
+        }
+
+        private void cancelPending() {
+            final ScheduledFuture<?> pending = this.pending;
+            if (pending != null) {
+                pending.cancel(false);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2019 Michel Kremer (kremi151)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package lu.kremi151.jenkins.wolagent.reachability;
+
+import lu.kremi151.jenkins.wolagent.Messages;
+
+import javax.annotation.Nonnull;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+
+public enum ReadinessProbe {
+
+    ICMP {
+        @Override
+        public String getDisplayName() {
+            return Messages.ReadinessProbe_ICMP();
+        }
+
+        @Nonnull
+        @Override
+        public ReachabilityCheck createCheck(InetAddress address, int port, int timeout) {
+            return new IcmpCheck(address, timeout);
+        }
+    },
+    TCP {
+        @Override
+        public String getDisplayName() {
+            return Messages.ReadinessProbe_TCP();
+        }
+
+        @Nonnull
+        @Override
+        public ReachabilityCheck createCheck(InetAddress address, int port, int timeout) {
+            return new TcpConnectCheck(new InetSocketAddress(address, port), timeout);
+        }
+    },
+    ICMP_AND_TCP {
+        @Override
+        public String getDisplayName() {
+            return Messages.ReadinessProbe_ICMPAndTCP();
+        }
+
+        @Nonnull
+        @Override
+        public ReachabilityCheck createCheck(InetAddress address, int port, int timeout) {
+            final ReachabilityCheck icmp = ICMP.createCheck(address, port, timeout);
+            final ReachabilityCheck tcp = TCP.createCheck(address, port, timeout);
+            return new ReachabilityCheck() {
+                @Nonnull
+                @Override
+                public CompletableFuture<Boolean> attempt(@Nonnull ScheduledExecutorService executor) {
+                    return icmp.attempt(executor).thenCombine(tcp.attempt(executor), Boolean::logicalAnd);
+                }
+
+                @Override
+                public boolean isBlocking() {
+                    return icmp.isBlocking() || tcp.isBlocking();
+                }
+
+                @Override
+                public String toString() {
+                    return icmp + " and " + tcp;
+                }
+            };
+        }
+    };
+
+    public static final ReadinessProbe DEFAULT = ICMP;
+
+    public abstract String getDisplayName();
+
+    public boolean requiresPort() {
+        return this != ICMP;
+    }
+
+    /**
+     * @param address the address of the node
+     * @param port    the TCP port to connect to, only used by TCP based probes
+     * @param timeout the timeout of a single attempt in milliseconds
+     */
+    @Nonnull
+    public abstract ReachabilityCheck createCheck(InetAddress address, int port, int timeout);
+
+}
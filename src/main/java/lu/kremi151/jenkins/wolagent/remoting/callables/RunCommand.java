@@ -19,21 +19,90 @@ package lu.kremi151.jenkins.wolagent.remoting.callables;
 import jenkins.security.MasterToSlaveCallable;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringTokenizer;
+import java.util.concurrent.TimeUnit;
 
-public class RunCommand extends MasterToSlaveCallable<Void, IOException> {
+/**
+ * Runs a command on the agent, streaming its combined output to the given stream and returning its exit code.
+ * The command is split on white space, just like {@link Runtime#exec(String)} does.
+ */
+public class RunCommand extends MasterToSlaveCallable<Integer, IOException> {
+
+    private static final long serialVersionUID = 1L;
 
     private String command;
+    private OutputStream output;
+    private long timeout;
 
     public RunCommand(){}
 
-    public RunCommand(String command) {
+    /**
+     * @param output  receives stdout and stderr of the command, usually a {@code RemoteOutputStream}
+     * @param timeout milliseconds after which the command is killed, {@code 0} to wait indefinitely
+     */
+    public RunCommand(String command, OutputStream output, long timeout) {
         this.command = command;
+        this.output = output;
+        this.timeout = timeout;
     }
 
     @Override
-    public Void call() throws IOException {
-        Runtime.getRuntime().exec(command);
-        return null;
+    public Integer call() throws IOException {
+        final List<String> args = new ArrayList<>();
+        final StringTokenizer tokenizer = new StringTokenizer(command);
+        while (tokenizer.hasMoreTokens()) {
+            args.add(tokenizer.nextToken());
+        }
+        if (args.isEmpty()) {
+            throw new IOException("Empty command");
+        }
+        final Process process = new ProcessBuilder(args)
+                .redirectErrorStream(true)
+                .start();
+        process.getOutputStream().close();
+
+        // Draining the output on its own thread, a command filling the pipe would block otherwise
+        final Thread pump = new Thread(() -> pump(process.getInputStream()), "RunCommand output of " + args.get(0));
+        pump.setDaemon(true);
+        pump.start();
+        try {
+            if (timeout > 0) {
+                if (!process.waitFor(timeout, TimeUnit.MILLISECONDS)) {
+                    process.destroyForcibly();
+                    throw new IOException("Command " + command + " did not terminate within " + timeout + " ms");
+                }
+            } else {
+                process.waitFor();
+            }
+            pump.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            process.destroyForcibly();
+            throw (IOException) new InterruptedIOException("Interrupted while waiting for " + command).initCause(e);
+        } finally {
+            if (output != null) {
+                output.flush();
+            }
+        }
+        return process.exitValue();
+    }
+
+    private void pump(InputStream in) {
+        final byte[] buffer = new byte[4096];
+        try (InputStream stream = in) {
+            int read;
+            while ((read = stream.read(buffer)) >= 0) {
+                if (output != null) {
+                    output.write(buffer, 0, read);
+                }
+            }
+        } catch (IOException e) {
+            // The process got killed or the channel is going down, nothing left to forward
+        }
     }
 
 }
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2019 Michel Kremer (kremi151)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package lu.kremi151.jenkins.wolagent.remoting.callables;
+
+import jenkins.security.MasterToSlaveCallable;
+import lu.kremi151.jenkins.wolagent.util.Subnet;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Sends a magic packet from the agent, so nodes on subnets the controller cannot broadcast to can be woken up.
+ * Besides the given endpoints, the packet is broadcast on the local subnet of the node, if the agent is attached to it.
+ */
+public class SendMagicPackets extends MasterToSlaveCallable<Integer, IOException> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final byte[] payload;
+    private final List<String> addresses;
+    private final List<Integer> ports;
+    private final String nodeAddress;
+    private final int localPort;
+    private final int count;
+
+    /**
+     * @param nodeAddress address of the node to wake, or {@code null} if unknown
+     * @param localPort   port to use for the broadcast on the local subnet of the node
+     * @param count       number of times each endpoint is sent the packet
+     */
+    public SendMagicPackets(byte[] payload, List<String> addresses, List<Integer> ports, String nodeAddress, int localPort, int count) {
+        this.payload = payload.clone();
+        this.addresses = new ArrayList<>(addresses);
+        this.ports = new ArrayList<>(ports);
+        this.nodeAddress = nodeAddress;
+        this.localPort = localPort;
+        this.count = count;
+    }
+
+    /**
+     * @return the number of packets sent
+     */
+    @Override
+    public Integer call() throws IOException {
+        final Set<InetSocketAddress> destinations = new LinkedHashSet<>();
+        if (nodeAddress != null) {
+            final InetAddress node = InetAddress.getByName(nodeAddress);
+            for (Subnet subnet : Subnet.ofLocalInterfaces()) {
+                if (subnet.getBroadcast() != null && subnet.contains(node)) {
+                    destinations.add(new InetSocketAddress(subnet.getBroadcast(), localPort));
+                }
+            }
+        }
+        IOException error = null;
+        for (int i = 0; i < addresses.size(); i++) {
+            try {
+                destinations.add(new InetSocketAddress(InetAddress.getByName(addresses.get(i)), ports.get(i)));
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+
+        int sent = 0;
+        try (DatagramChannel channel = DatagramChannel.open()) {
+            channel.setOption(StandardSocketOptions.SO_BROADCAST, true);
+            final ByteBuffer buffer = ByteBuffer.wrap(payload);
+            for (int i = 0; i < count; i++) {
+                for (InetSocketAddress destination : destinations) {
+                    try {
+                        buffer.rewind();
+                        channel.send(buffer, destination);
+                        sent++;
+                    } catch (IOException e) {
+                        error = e;
+                    }
+                }
+            }
+        }
+        if (sent == 0 && error != null) {
+            throw error;
+        }
+        return sent;
+    }
+
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2019 Michel Kremer (kremi151)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package lu.kremi151.jenkins.wolagent.retention;
+
+import hudson.model.Computer;
+import hudson.model.Executor;
+import hudson.model.Node;
+import hudson.model.Queue;
+import hudson.slaves.SlaveComputer;
+import jenkins.model.Jenkins;
+import lu.kremi151.jenkins.wolagent.reachability.BootTimeEstimate;
+import lu.kremi151.jenkins.wolagent.reachability.BootTimeModel;
+import lu.kremi151.jenkins.wolagent.slave.PowerState;
+import lu.kremi151.jenkins.wolagent.slave.WOLSlave;
+import lu.kremi151.jenkins.wolagent.slave.WOLSlaveComputer;
+import lu.kremi151.jenkins.wolagent.wake.WakeRegistry;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The executors which will be available before a node woken now would be online: those of nodes already waking,
+ * and busy executors expected to finish within the typical boot time of the node.
+ * Each executor is taken by at most one queue item.
+ * <p>
+ * Shared by the retention strategy and the pre-waker, so both wake a node for the same items only.
+ */
+public final class Capacity {
+
+    private final List<Slot> slots = new ArrayList<>();
+    private final long bootMillis;
+
+    /**
+     * @param sleeping the computer which would be woken, its own executors do not count
+     */
+    public Capacity(@Nonnull SlaveComputer sleeping) {
+        final BootTimeEstimate estimate = BootTimeModel.get().getEstimate(sleeping.getName());
+        bootMillis = estimate == null ? 0L : estimate.getP50();
+        for (Computer other : Jenkins.get().getComputers()) {
+            final Node otherNode = other.getNode();
+            if (other == sleeping || otherNode == null) {
+                continue;
+            }
+            if (other instanceof WOLSlaveComputer && ((WOLSlaveComputer) other).getPowerState() == PowerState.WAKING) {
+                if (isWakeProgressing((WOLSlaveComputer) other)) {
+                    slots.add(new Slot(otherNode, otherNode.getNumExecutors(), false));
+                }
+            } else if (bootMillis > 0L && other.isOnline() && other.isAcceptingTasks()
+                    && !(other instanceof WOLSlaveComputer && ((WOLSlaveComputer) other).getPowerState() == PowerState.SUSPENDING)) {
+                int finishing = 0;
+                for (Executor executor : other.getExecutors()) {
+                    // Builds running longer than expected have no estimate and do not count
+                    final long remaining = executor.isBusy() ? executor.getEstimatedRemainingTimeMillis() : -1L;
+                    if (remaining >= 0L && remaining <= bootMillis) {
+                        finishing++;
+                    }
+                }
+                if (finishing > 0) {
+                    slots.add(new Slot(otherNode, finishing, true));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return whether an idle executor of an online computer other than {@code except} can take the item right away
+     */
+    public static boolean canBeTakenByOnlineComputer(@Nonnull Queue.BuildableItem item, @CheckForNull Computer except) {
+        for (Computer other : Jenkins.get().getComputers()) {
+            if (other == except || !other.isOnline() || !other.isAcceptingTasks() || other.countIdle() == 0) {
+                continue;
+            }
+            if (other instanceof WOLSlaveComputer && ((WOLSlaveComputer) other).getPowerState() == PowerState.SUSPENDING) {
+                continue;
+            }
+            final Node otherNode = other.getNode();
+            if (otherNode != null && otherNode.canTake(item) == null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A node whose wakes keep failing is reconnected over and over, so it only counts while its current wake
+     * is younger than its slowest observed boot, and not at all if its previous wake failed.
+     */
+    private static boolean isWakeProgressing(WOLSlaveComputer waking) {
+        final String name = waking.getName();
+        final long age = WakeRegistry.get().getWakeAge(name);
+        if (age < 0L) {
+            // Connecting without a wake in flight, i.e. the node is up and the agent is being launched
+            return true;
+        }
+        if (WakeRegistry.get().hasLastWakeFailed(name)) {
+            return false;
+        }
+        final BootTimeEstimate estimate = BootTimeModel.get().getEstimate(name);
+        final Node node = waking.getNode();
+        final long limit = estimate != null ? estimate.getP99()
+                : node instanceof WOLSlave ? ((WOLSlave) node).getConnectionTimeout() : 0L;
+        return age < limit;
+    }
+
+    /**
+     * Lets the item take an executor able to run it, if any is left.
+     *
+     * @param held how long the item has been in demand, in milliseconds. Executors about to finish only take
+     *             items which did not wait longer than the boot time of the node yet.
+     * @return whether an executor was taken, i.e. the item does not need the sleeping node
+     */
+    public boolean take(@Nonnull Queue.BuildableItem item, long held) {
+        for (Slot slot : slots) {
+            if (slot.finishing && held > bootMillis) {
+                continue;
+            }
+            if (slot.free > 0 && slot.node.canTake(item) == null) {
+                slot.free--;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class Slot {
+
+        private final Node node;
+        private final boolean finishing;
+        private int free;
+
+        private Slot(Node node, int free, boolean finishing) {
+            this.node = node;
+            this.free = free;
+            this.finishing = finishing;
+        }
+
+    }
+
+}
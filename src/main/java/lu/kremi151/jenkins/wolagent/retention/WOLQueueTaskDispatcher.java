@@ -0,0 +1,44 @@
+/*
+ * Copyright 2019 Michel Kremer (kremi151)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package lu.kremi151.jenkins.wolagent.retention;
+
+import hudson.Extension;
+import hudson.model.CauseOfBlockage;
+import hudson.model.Computer;
+import hudson.model.Node;
+import hudson.model.Queue;
+import hudson.model.queue.QueueTaskDispatcher;
+import lu.kremi151.jenkins.wolagent.Messages;
+import lu.kremi151.jenkins.wolagent.slave.PowerState;
+import lu.kremi151.jenkins.wolagent.slave.WOLSlaveComputer;
+
+/**
+ * Keeps new work away from nodes which are about to be suspended.
+ */
+@Extension
+public class WOLQueueTaskDispatcher extends QueueTaskDispatcher {
+
+    @Override
+    public CauseOfBlockage canTake(Node node, Queue.BuildableItem item) {
+        final Computer computer = node.toComputer();
+        if (computer instanceof WOLSlaveComputer && ((WOLSlaveComputer) computer).getPowerState() == PowerState.SUSPENDING) {
+            return CauseOfBlockage.fromMessage(Messages._WOLQueueTaskDispatcher_Suspending(node.getNodeName()));
+        }
+        return null;
+    }
+
+}
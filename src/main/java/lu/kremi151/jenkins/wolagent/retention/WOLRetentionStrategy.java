@@ -0,0 +1,189 @@
+/*
+ * Copyright 2019 Michel Kremer (kremi151)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package lu.kremi151.jenkins.wolagent.retention;
+
+import hudson.Extension;
+import hudson.model.Descriptor;
+import hudson.model.Node;
+import hudson.model.Queue;
+import hudson.slaves.OfflineCause;
+import hudson.slaves.RetentionStrategy;
+import hudson.slaves.SlaveComputer;
+import hudson.util.FormValidation;
+import lu.kremi151.jenkins.wolagent.Messages;
+import lu.kremi151.jenkins.wolagent.slave.WOLSlaveComputer;
+import org.jenkinsci.Symbol;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.QueryParameter;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Wakes a node when builds are waiting for it and suspends it again once it has been idle for a while.
+ * A minimum uptime prevents nodes from being suspended right after they woke up.
+ * <p>
+ * Nodes are not woken for builds which a waking node will take. Builds are also held for up to the typical boot time
+ * of the node if an online executor is expected to finish sooner than that, and the node is only woken once the
+ * build waited longer.
+ */
+public class WOLRetentionStrategy extends RetentionStrategy<SlaveComputer> {
+
+    private static final Logger LOGGER = java.util.logging.Logger.getLogger(WOLRetentionStrategy.class.getName());
+
+    private final int inDemandDelay;
+    private final int idleDelay;
+    private final int minimumUptime;
+
+    @DataBoundConstructor
+    public WOLRetentionStrategy(int inDemandDelay, int idleDelay, int minimumUptime) {
+        this.inDemandDelay = Math.max(0, inDemandDelay);
+        this.idleDelay = Math.max(1, idleDelay);
+        this.minimumUptime = Math.max(0, minimumUptime);
+    }
+
+    public int getInDemandDelay() {
+        return inDemandDelay;
+    }
+
+    public int getIdleDelay() {
+        return idleDelay;
+    }
+
+    public int getMinimumUptime() {
+        return minimumUptime;
+    }
+
+    @Override
+    public synchronized long check(@Nonnull SlaveComputer c) {
+        if (c.isOffline()) {
+            if (c.isLaunchSupported() && !c.isConnecting() && !c.isTemporarilyOffline() && isInDemand(c)) {
+                LOGGER.log(Level.INFO, "Launching computer {0} as it has been in demand for {1} min", new Object[]{c.getName(), inDemandDelay});
+                c.connect(false);
+            }
+        } else if (c.isIdle() && shouldSuspend(c)) {
+            if (c instanceof WOLSlaveComputer && !markSuspending((WOLSlaveComputer) c)) {
+                return 1;
+            }
+            LOGGER.log(Level.INFO, "Suspending computer {0} as it has been idle for {1} min", new Object[]{c.getName(), idleDelay});
+            c.disconnect(OfflineCause.create(Messages._WOLRetentionStrategy_SuspendedWhileIdle()));
+        }
+        return 1;
+    }
+
+    /**
+     * Stops new work from being assigned to the computer, then makes sure none was assigned in the meantime.
+     * Both happen under the queue lock, so a queue maintenance in progress cannot hand it a build in between.
+     *
+     * @return whether the computer is still idle and may be suspended
+     */
+    private static boolean markSuspending(WOLSlaveComputer c) {
+        final AtomicBoolean idle = new AtomicBoolean();
+        Queue.withLock(() -> {
+            c.setSuspending(true);
+            idle.set(c.isIdle());
+            if (!idle.get()) {
+                c.setSuspending(false);
+            }
+        });
+        return idle.get();
+    }
+
+    private boolean isInDemand(SlaveComputer c) {
+        final Node node = c.getNode();
+        if (node == null) {
+            return false;
+        }
+        final long now = System.currentTimeMillis();
+        final long demandSince = now - TimeUnit.MINUTES.toMillis(inDemandDelay);
+        Capacity capacity = null;
+        for (Queue.BuildableItem item : Queue.getInstance().getBuildableItems()) {
+            if (item.buildableStartMilliseconds > demandSince || node.canTake(item) != null || Capacity.canBeTakenByOnlineComputer(item, c)) {
+                continue;
+            }
+            if (capacity == null) {
+                capacity = new Capacity(c);
+            }
+            if (!capacity.take(item, demandSince - item.buildableStartMilliseconds)) {
+                return true;
+            }
+            LOGGER.log(Level.FINE, "Not waking computer {0}, {1} will be taken by a waking node or a node finishing its build sooner", new Object[]{c.getName(), item.task.getName()});
+        }
+        return false;
+    }
+
+    private boolean shouldSuspend(SlaveComputer c) {
+        final long now = System.currentTimeMillis();
+        if (now - c.getIdleStartMilliseconds() < TimeUnit.MINUTES.toMillis(idleDelay)) {
+            return false;
+        }
+        if (now - c.getConnectTime() < TimeUnit.MINUTES.toMillis(minimumUptime)) {
+            return false;
+        }
+        final Node node = c.getNode();
+        if (node == null) {
+            return false;
+        }
+        // Do not suspend if there is work this node could pick up right away
+        for (Queue.BuildableItem item : Queue.getInstance().getBuildableItems()) {
+            if (node.canTake(item) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Extension
+    @Symbol("wolSuspendWhenIdle")
+    public static class DescriptorImpl extends Descriptor<RetentionStrategy<?>> {
+
+        @Override
+        public String getDisplayName() {
+            return Messages.WOLRetentionStrategy_DisplayName();
+        }
+
+        private static FormValidation validateNonNegativeInteger(String str) {
+            if (str == null || !str.matches("^[0-9]+$")) {
+                return FormValidation.error(Messages.WOLSlave_InputMustBeInteger());
+            }
+            return FormValidation.ok();
+        }
+
+        public FormValidation doCheckInDemandDelay(@QueryParameter String inDemandDelay) {
+            return validateNonNegativeInteger(inDemandDelay);
+        }
+
+        public FormValidation doCheckIdleDelay(@QueryParameter String idleDelay) {
+            if (idleDelay == null || !idleDelay.matches("^[0-9]+$")) {
+                return FormValidation.error(Messages.WOLSlave_InputMustBeInteger());
+            }
+            if (Integer.parseInt(idleDelay) <= 0) {
+                return FormValidation.error(Messages.WOLSlave_InputNumberMustBeStrictlyPositive());
+            }
+            return FormValidation.ok();
+        }
+
+        public FormValidation doCheckMinimumUptime(@QueryParameter String minimumUptime) {
+            return validateNonNegativeInteger(minimumUptime);
+        }
+
+    }
+
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2019 Michel Kremer (kremi151)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package lu.kremi151.jenkins.wolagent.slave;
+
+/**
+ * The power state of a {@link WOLSlaveComputer} as far as the controller knows it.
+ */
+public enum PowerState {
+
+    /**
+     * Offline and not being woken.
+     */
+    ASLEEP,
+    /**
+     * Being woken or connecting, it will take work once online.
+     */
+    WAKING,
+    ONLINE,
+    /**
+     * Still online, but about to be suspended, so it must not take new work.
+     */
+    SUSPENDING
+
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2019 Michel Kremer (kremi151)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package lu.kremi151.jenkins.wolagent.slave;
+
+import hudson.Extension;
+import hudson.model.Node;
+import jenkins.model.NodeListener;
+import lu.kremi151.jenkins.wolagent.metrics.LaunchMetrics;
+import lu.kremi151.jenkins.wolagent.reachability.BeaconListener;
+import lu.kremi151.jenkins.wolagent.reachability.BootTimeModel;
+import lu.kremi151.jenkins.wolagent.reachability.PresenceTracker;
+import lu.kremi151.jenkins.wolagent.wake.WakeRegistry;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Drops the state kept about deleted nodes.
+ */
+@Extension
+public class WOLNodeListener extends NodeListener {
+
+    @Override
+    protected void onDeleted(@Nonnull Node node) {
+        if (node instanceof WOLSlave) {
+            LaunchMetrics.remove(node.getNodeName());
+            BootTimeModel.get().remove(node.getNodeName());
+            PresenceTracker.get().remove(node.getNodeName());
+            BeaconListener.get().remove(node.getNodeName());
+            WakeRegistry.get().remove(node.getNodeName());
+        }
+    }
+
+}
@@ -18,23 +18,36 @@ package lu.kremi151.jenkins.wolagent.slave;
 
 import hudson.Extension;
 import hudson.model.Computer;
+import hudson.model.Node;
 import hudson.model.Slave;
 import hudson.slaves.ComputerLauncher;
 import hudson.slaves.JNLPLauncher;
 import hudson.util.FormValidation;
+import hudson.util.Secret;
 import lu.kremi151.jenkins.wolagent.Messages;
 import lu.kremi151.jenkins.wolagent.launcher.WOLLauncher;
+import lu.kremi151.jenkins.wolagent.reachability.ReadinessProbe;
 import lu.kremi151.jenkins.wolagent.util.HostHelper;
+import lu.kremi151.jenkins.wolagent.util.MagicPacket;
+import lu.kremi151.jenkins.wolagent.util.WakeOnLAN;
+import lu.kremi151.jenkins.wolagent.wake.RetransmitPolicy;
+import lu.kremi151.jenkins.wolagent.wake.WakeAddressing;
+import lu.kremi151.jenkins.wolagent.wake.WakeEndpoint;
+import net.sf.json.JSONObject;
 import org.apache.commons.lang.StringUtils;
 import org.jenkinsci.Symbol;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.StaplerRequest;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -43,15 +56,40 @@ public final class WOLSlave extends Slave implements Serializable {
     private static final Logger LOGGER = java.util.logging.Logger.getLogger(WOLSlave.class.getName());
 
     private String macAddress;
+    private transient MagicPacket magicPacket;
     private String broadcastIP;
+    private int wakePort;
+    private List<WakeEndpoint> wakeEndpoints;
+    private Secret secureOnPassword;
 
     private ComputerLauncher launcher;
 
     private int pingInterval;
     private int connectionTimeout;
+    private boolean adaptiveTiming;
+
+    private ReadinessProbe readinessProbe;
+
+    private int wakeBurstCount;
+    private double resendBackoffFactor;
+    private int maxResends;
+
+    private boolean preWakeOnQueue;
+
+    private String wakeGroup;
+
+    private String wakeRelay;
+    /**
+     * Unset means enabled, so nodes saved before the option existed behave like new ones.
+     */
+    private Boolean autoSelectRelay;
+
+    private WakeAddressing wakeAddressing;
 
     private String commandBeforeDisconnect;
 
+    private String lastKnownAddress;
+
     @DataBoundConstructor
     public WOLSlave(
             @Nonnull String name,
@@ -64,6 +102,11 @@ public final class WOLSlave extends Slave implements Serializable {
             String commandBeforeDisconnect
     ) throws Descriptor.FormException, IOException {
         super(name, remoteFS, null);
+        try {
+            this.magicPacket = MagicPacket.parse(macAddress);
+        } catch (IllegalArgumentException e) {
+            throw new Descriptor.FormException(Messages.WOLSlave_InvalidMACAddress(), e, "macAddress");
+        }
         this.macAddress = macAddress;
         this.broadcastIP = broadcastIP;
         this.pingInterval = pingInterval;
@@ -90,16 +133,51 @@ public final class WOLSlave extends Slave implements Serializable {
         this.launcher = ensureNotNullWithDefault(launcher);
     }
 
+    @Override
+    protected Object readResolve() {
+        updateMagicPacket();
+        return super.readResolve();
+    }
+
+    /**
+     * Builds the magic packet from the MAC address and SecureOn password, or clears it if either is malformed.
+     * Submitted forms are validated by {@link Descriptor#newInstance(StaplerRequest, JSONObject)}.
+     */
+    private void updateMagicPacket() {
+        try {
+            magicPacket = MagicPacket.parse(macAddress, Secret.toString(secureOnPassword));
+        } catch (IllegalArgumentException e) {
+            magicPacket = null;
+            LOGGER.log(Level.WARNING, "Node {0} has an invalid MAC address or SecureOn password configured: {1}", new Object[]{name, macAddress});
+        }
+    }
+
     @DataBoundSetter
     public void setMacAddress(String macAddress) {
         LOGGER.log(Level.INFO, "Set mac address to {0}", macAddress);
         this.macAddress = macAddress;
+        updateMagicPacket();
+    }
+
+    public Secret getSecureOnPassword() {
+        return secureOnPassword;
+    }
+
+    @DataBoundSetter
+    public void setSecureOnPassword(Secret secureOnPassword) {
+        this.secureOnPassword = secureOnPassword;
+        updateMagicPacket();
     }
 
     public String getMacAddress() {
         return macAddress;
     }
 
+    @Nullable
+    public MagicPacket getMagicPacket() {
+        return magicPacket;
+    }
+
     @DataBoundSetter
     public void setCommandBeforeDisconnect(String commandBeforeDisconnect) {
         LOGGER.log(Level.INFO, "Set command before disconnect to {0}", commandBeforeDisconnect);
@@ -130,6 +208,122 @@ public final class WOLSlave extends Slave implements Serializable {
         return connectionTimeout;
     }
 
+    @DataBoundSetter
+    public void setAdaptiveTiming(boolean adaptiveTiming) {
+        LOGGER.log(Level.INFO, "Set adaptive timing to {0}", adaptiveTiming);
+        this.adaptiveTiming = adaptiveTiming;
+    }
+
+    /**
+     * @return whether the ping interval and connection timeout are tuned from the observed boot times of this node
+     */
+    public boolean isAdaptiveTiming() {
+        return adaptiveTiming;
+    }
+
+    @Nonnull
+    public ReadinessProbe getReadinessProbe() {
+        return readinessProbe == null ? ReadinessProbe.DEFAULT : readinessProbe;
+    }
+
+    @DataBoundSetter
+    public void setReadinessProbe(ReadinessProbe readinessProbe) {
+        LOGGER.log(Level.INFO, "Set readiness probe to {0}", readinessProbe);
+        this.readinessProbe = readinessProbe;
+    }
+
+    @DataBoundSetter
+    public void setWakeBurstCount(int wakeBurstCount) {
+        LOGGER.log(Level.INFO, "Set wake burst count to {0}", wakeBurstCount);
+        this.wakeBurstCount = wakeBurstCount;
+    }
+
+    public int getWakeBurstCount() {
+        return wakeBurstCount;
+    }
+
+    @DataBoundSetter
+    public void setResendBackoffFactor(double resendBackoffFactor) {
+        LOGGER.log(Level.INFO, "Set resend backoff factor to {0}", resendBackoffFactor);
+        this.resendBackoffFactor = resendBackoffFactor;
+    }
+
+    public double getResendBackoffFactor() {
+        return resendBackoffFactor;
+    }
+
+    @DataBoundSetter
+    public void setMaxResends(int maxResends) {
+        LOGGER.log(Level.INFO, "Set max resends to {0}", maxResends);
+        this.maxResends = maxResends;
+    }
+
+    public int getMaxResends() {
+        return maxResends;
+    }
+
+    @DataBoundSetter
+    public void setPreWakeOnQueue(boolean preWakeOnQueue) {
+        LOGGER.log(Level.INFO, "Set pre-wake on queue to {0}", preWakeOnQueue);
+        this.preWakeOnQueue = preWakeOnQueue;
+    }
+
+    public boolean isPreWakeOnQueue() {
+        return preWakeOnQueue;
+    }
+
+    /**
+     * @return the name of the wake group this node explicitly belongs to
+     */
+    public String getWakeGroup() {
+        return wakeGroup;
+    }
+
+    @DataBoundSetter
+    public void setWakeGroup(String wakeGroup) {
+        LOGGER.log(Level.INFO, "Set wake group to {0}", wakeGroup);
+        this.wakeGroup = StringUtils.trimToNull(wakeGroup);
+    }
+
+    /**
+     * @return the name of the node relaying the magic packets of this node, or {@code null} to select one automatically
+     */
+    public String getWakeRelay() {
+        return wakeRelay;
+    }
+
+    @DataBoundSetter
+    public void setWakeRelay(String wakeRelay) {
+        LOGGER.log(Level.INFO, "Set wake relay to {0}", wakeRelay);
+        this.wakeRelay = StringUtils.trimToNull(wakeRelay);
+    }
+
+    public boolean isAutoSelectRelay() {
+        return autoSelectRelay == null || autoSelectRelay;
+    }
+
+    @DataBoundSetter
+    public void setAutoSelectRelay(boolean autoSelectRelay) {
+        LOGGER.log(Level.INFO, "Set automatic relay selection to {0}", autoSelectRelay);
+        this.autoSelectRelay = autoSelectRelay;
+    }
+
+    @Nonnull
+    public RetransmitPolicy getRetransmitPolicy() {
+        return new RetransmitPolicy(wakeBurstCount, resendBackoffFactor, maxResends);
+    }
+
+    @Nonnull
+    public WakeAddressing getWakeAddressing() {
+        return wakeAddressing == null ? WakeAddressing.DEFAULT : wakeAddressing;
+    }
+
+    @DataBoundSetter
+    public void setWakeAddressing(WakeAddressing wakeAddressing) {
+        LOGGER.log(Level.INFO, "Set wake addressing to {0}", wakeAddressing);
+        this.wakeAddressing = wakeAddressing;
+    }
+
     public String getBroadcastIP() {
         return broadcastIP;
     }
@@ -139,6 +333,57 @@ public final class WOLSlave extends Slave implements Serializable {
         this.broadcastIP = broadcastIP;
     }
 
+    /**
+     * @return the UDP port magic packets are sent to on the computed or configured broadcast address
+     */
+    public int getWakePort() {
+        return WakeOnLAN.effectivePort(wakePort);
+    }
+
+    /**
+     * Ports out of range are replaced by the default port.
+     */
+    @DataBoundSetter
+    public void setWakePort(int wakePort) {
+        LOGGER.log(Level.INFO, "Set wake port to {0}", wakePort);
+        this.wakePort = WakeOnLAN.effectivePort(wakePort);
+    }
+
+    /**
+     * @return additional endpoints each magic packet is also sent to
+     */
+    @Nonnull
+    public List<WakeEndpoint> getWakeEndpoints() {
+        return wakeEndpoints == null ? Collections.emptyList() : Collections.unmodifiableList(wakeEndpoints);
+    }
+
+    @DataBoundSetter
+    public void setWakeEndpoints(List<WakeEndpoint> wakeEndpoints) {
+        LOGGER.log(Level.INFO, "Set wake endpoints to {0}", wakeEndpoints);
+        this.wakeEndpoints = wakeEndpoints == null ? null : new ArrayList<>(wakeEndpoints);
+    }
+
+    /**
+     * @return the address the host of this node resolved to the last time, used as a fallback if resolution fails
+     */
+    @Nullable
+    public String getLastKnownAddress() {
+        return lastKnownAddress;
+    }
+
+    public void updateLastKnownAddress(String lastKnownAddress) {
+        if (StringUtils.equals(this.lastKnownAddress, lastKnownAddress)) {
+            return;
+        }
+        LOGGER.log(Level.INFO, "Update last known address of {0} to {1}", new Object[]{name, lastKnownAddress});
+        this.lastKnownAddress = lastKnownAddress;
+        try {
+            save();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Unable to persist last known address of " + name, e);
+        }
+    }
+
     static ComputerLauncher ensureNotNullWithDefault(@Nullable ComputerLauncher launcher) {
         if (launcher != null) {
             return launcher;
@@ -167,14 +412,53 @@ public final class WOLSlave extends Slave implements Serializable {
             return true;
         }
 
+        @Override
+        public Node newInstance(@Nullable StaplerRequest req, @Nonnull JSONObject formData) throws FormException {
+            final Node node = super.newInstance(req, formData);
+            if (node instanceof WOLSlave) {
+                final WOLSlave slave = (WOLSlave) node;
+                if (!MagicPacket.isValidMacAddress(slave.getMacAddress())) {
+                    throw new FormException(Messages.WOLSlave_InvalidMACAddress(), "macAddress");
+                }
+                if (!MagicPacket.isValidSecureOnPassword(Secret.toString(slave.getSecureOnPassword()))) {
+                    throw new FormException(Messages.WOLSlave_InvalidSecureOnPassword(), "secureOnPassword");
+                }
+            }
+            return node;
+        }
+
         public FormValidation doCheckMacAddress(@QueryParameter String macAddress) {
-            return (StringUtils.isNotBlank(macAddress) && macAddress.matches("^([0-9A-Fa-f]{2}[:-]){5}([0-9A-Fa-f]{2})$"))
+            return MagicPacket.isValidMacAddress(macAddress)
                     ? FormValidation.ok()
                     : FormValidation.error(Messages.WOLSlave_InvalidMACAddress());
         }
 
+        public FormValidation doCheckSecureOnPassword(@QueryParameter Secret secureOnPassword) {
+            return MagicPacket.isValidSecureOnPassword(Secret.toString(secureOnPassword))
+                    ? FormValidation.ok()
+                    : FormValidation.error(Messages.WOLSlave_InvalidSecureOnPassword());
+        }
+
+        public FormValidation doCheckWakePort(@QueryParameter String wakePort) {
+            if (StringUtils.isBlank(wakePort)) {
+                return FormValidation.ok();
+            }
+            try {
+                final int port = Integer.parseInt(wakePort.trim());
+                if (port > 0 && port <= WakeOnLAN.MAX_PORT) {
+                    return FormValidation.ok();
+                }
+            } catch (NumberFormatException e) {
+                // Handled below
+            }
+            return FormValidation.error(Messages.WakeEndpoint_InvalidPort());
+        }
+
         public FormValidation doCheckBroadcastIP(@QueryParameter String broadcastIP) {
-            if (StringUtils.isBlank(broadcastIP) || !HostHelper.isIpAddress(broadcastIP)) {
+            if (StringUtils.isBlank(broadcastIP)) {
+                return FormValidation.ok();
+            }
+            if (!HostHelper.isIpAddress(broadcastIP)) {
                 return FormValidation.error(Messages.WOLSlave_InvalidIPAddress());
             }
             return FormValidation.ok();
@@ -203,6 +487,31 @@ public final class WOLSlave extends Slave implements Serializable {
                     : FormValidation.error(errorMessage);
         }
 
+        public FormValidation doCheckWakeBurstCount(@QueryParameter String wakeBurstCount) {
+            String errorMessage = validatePositiveIntegerInput(wakeBurstCount);
+            return errorMessage == null
+                    ? FormValidation.ok()
+                    : FormValidation.error(errorMessage);
+        }
+
+        public FormValidation doCheckResendBackoffFactor(@QueryParameter String resendBackoffFactor) {
+            try {
+                if (StringUtils.isNotBlank(resendBackoffFactor) && Double.parseDouble(resendBackoffFactor) >= 1.0) {
+                    return FormValidation.ok();
+                }
+            } catch (NumberFormatException e) {
+                // Handled below
+            }
+            return FormValidation.error(Messages.WOLSlave_BackoffFactorMustBeAtLeastOne());
+        }
+
+        public FormValidation doCheckMaxResends(@QueryParameter String maxResends) {
+            if (StringUtils.isBlank(maxResends) || !maxResends.matches("^[0-9]+$")) {
+                return FormValidation.error(Messages.WOLSlave_InputMustBeInteger());
+            }
+            return FormValidation.ok();
+        }
+
         public FormValidation doCheckConnectionTimeout(@QueryParameter String connectionTimeout) {
             String errorMessage = validatePositiveIntegerInput(connectionTimeout);
             return errorMessage == null
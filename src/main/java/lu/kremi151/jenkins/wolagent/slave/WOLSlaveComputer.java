@@ -18,15 +18,119 @@ package lu.kremi151.jenkins.wolagent.slave;
 
 import hudson.model.Node;
 import hudson.slaves.ComputerLauncher;
+import hudson.slaves.OfflineCause;
 import hudson.slaves.SlaveComputer;
 import lu.kremi151.jenkins.wolagent.launcher.WOLLauncher;
+import lu.kremi151.jenkins.wolagent.wake.WakeRegistry;
 
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Connecting wakes the node first, without holding any thread while it boots.
+ * Only once the node is reachable, the agent is launched on a thread of the remoting pool as usual.
+ */
 public class WOLSlaveComputer extends SlaveComputer {
 
+    private final Object connectLock = new Object();
+
+    private volatile boolean suspending;
+
+    @CheckForNull
+    private volatile PendingConnect pendingConnect;
+
+    @CheckForNull
+    private volatile WakeOutcome wakeOutcome;
+
     public WOLSlaveComputer(WOLSlave slave) {
         super(slave);
     }
 
+    @Nonnull
+    public PowerState getPowerState() {
+        if (isOnline()) {
+            return suspending ? PowerState.SUSPENDING : PowerState.ONLINE;
+        }
+        if (isConnecting() || WakeRegistry.get().isWaking(getName())) {
+            return PowerState.WAKING;
+        }
+        return PowerState.ASLEEP;
+    }
+
+    /**
+     * Marks this computer as about to be suspended, so no new work gets assigned to it.
+     * The mark is dropped once the computer goes offline or is launched again.
+     */
+    public void setSuspending(boolean suspending) {
+        this.suspending = suspending;
+    }
+
+    @Override
+    protected Future<?> _connect(boolean forceReconnect) {
+        final ComputerLauncher launcher = getLauncher();
+        if (!(launcher instanceof WOLLauncher) || getChannel() != null) {
+            return super._connect(forceReconnect);
+        }
+        final PendingConnect connect;
+        synchronized (connectLock) {
+            final PendingConnect pending = pendingConnect;
+            if (pending != null && !pending.isDone()) {
+                if (!forceReconnect) {
+                    return pending;
+                }
+                pending.cancel(true);
+            }
+            final long start = System.nanoTime();
+            connect = new PendingConnect(((WOLLauncher) launcher).awaitAwake(this, getListener()));
+            pendingConnect = connect;
+            connect.awake.whenComplete((woken, t) -> {
+                if (connect.awake.isCancelled()) {
+                    return;
+                }
+                // The launcher picks the outcome up, and fails the launch the usual way if the node did not wake up
+                wakeOutcome = new WakeOutcome(start, Boolean.TRUE.equals(woken), t);
+                connect.launching(super._connect(forceReconnect));
+            });
+        }
+        return connect;
+    }
+
+    /**
+     * @return whether the node is being woken before connecting, or the agent is being launched
+     */
+    @Override
+    public boolean isConnecting() {
+        final PendingConnect pending = pendingConnect;
+        return super.isConnecting() || (pending != null && !pending.awake.isDone());
+    }
+
+    @Override
+    public Future<?> disconnect(OfflineCause cause) {
+        synchronized (connectLock) {
+            final PendingConnect pending = pendingConnect;
+            if (pending != null) {
+                pending.awake.cancel(true);
+            }
+        }
+        return super.disconnect(cause);
+    }
+
+    /**
+     * @return the outcome of the wake which preceded the current launch, or {@code null} if the launcher was invoked
+     * without connecting through this computer
+     */
+    @CheckForNull
+    public WakeOutcome takeWakeOutcome() {
+        final WakeOutcome outcome = wakeOutcome;
+        wakeOutcome = null;
+        return outcome;
+    }
+
     @Override
     protected ComputerLauncher grabLauncher(Node node) {
         if (!WOLSlave.class.isAssignableFrom(node.getClass())) {
@@ -35,12 +139,113 @@ public class WOLSlaveComputer extends SlaveComputer {
         WOLSlave slave = (WOLSlave) node;
         return new WOLLauncher(
                 WOLSlave.ensureNotNullWithDefault(slave.getLauncher()),
-                slave.getMacAddress(),
+                slave.getMagicPacket(),
                 slave.getBroadcastIP(),
+                slave.getWakePort(),
+                slave.getWakeEndpoints(),
                 slave.getPingInterval(),
                 slave.getConnectionTimeout(),
+                slave.isAdaptiveTiming(),
+                slave.getReadinessProbe(),
+                slave.getRetransmitPolicy(),
+                slave.getWakeAddressing(),
                 slave.getCommandBeforeDisconnect()
         );
     }
 
+    public static final class WakeOutcome {
+
+        private final long startNanos;
+        private final boolean woken;
+        @CheckForNull
+        private final Throwable error;
+
+        private WakeOutcome(long startNanos, boolean woken, @CheckForNull Throwable error) {
+            this.startNanos = startNanos;
+            this.woken = woken;
+            this.error = error;
+        }
+
+        /**
+         * @return when connecting started, in {@link System#nanoTime()} units
+         */
+        public long getStartNanos() {
+            return startNanos;
+        }
+
+        /**
+         * @return whether the node had to be woken up, as opposed to being found awake already
+         */
+        public boolean isWoken() {
+            return woken;
+        }
+
+        @CheckForNull
+        public Throwable getError() {
+            return error;
+        }
+
+    }
+
+    /**
+     * The future handed to callers of {@link #connect(boolean)}, which spans the wake and the launch.
+     */
+    private static final class PendingConnect implements Future<Object> {
+
+        private final CompletableFuture<Boolean> awake;
+        private final CompletableFuture<Future<?>> launch = new CompletableFuture<>();
+
+        private PendingConnect(CompletableFuture<Boolean> awake) {
+            this.awake = awake;
+            awake.whenComplete((v, t) -> {
+                if (awake.isCancelled()) {
+                    launch.cancel(false);
+                }
+            });
+        }
+
+        private void launching(Future<?> future) {
+            launch.complete(future);
+        }
+
+        /**
+         * @return the future of the launch, or {@code null} if the node is still being woken or the wake got cancelled
+         */
+        @CheckForNull
+        private Future<?> getLaunch() {
+            return launch.isDone() && !launch.isCancelled() ? launch.join() : null;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            final Future<?> future = getLaunch();
+            return future != null ? future.cancel(mayInterruptIfRunning) : awake.cancel(mayInterruptIfRunning);
+        }
+
+        @Override
+        public boolean isCancelled() {
+            final Future<?> future = getLaunch();
+            return future != null ? future.isCancelled() : launch.isCancelled();
+        }
+
+        @Override
+        public boolean isDone() {
+            final Future<?> future = getLaunch();
+            return future != null ? future.isDone() : launch.isCancelled();
+        }
+
+        @Override
+        public Object get() throws InterruptedException, ExecutionException {
+            return launch.get().get();
+        }
+
+        @Override
+        public Object get(long timeout, @Nonnull TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            final long deadline = System.nanoTime() + unit.toNanos(timeout);
+            final Future<?> future = launch.get(timeout, unit);
+            return future.get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        }
+
+    }
+
 }
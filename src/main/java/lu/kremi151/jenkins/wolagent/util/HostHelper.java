@@ -17,90 +17,191 @@
 package lu.kremi151.jenkins.wolagent.util;
 
 import hudson.slaves.ComputerLauncher;
+import lu.kremi151.jenkins.wolagent.host.HostExtractor;
+import lu.kremi151.jenkins.wolagent.host.ResolutionCache;
 import lu.kremi151.jenkins.wolagent.launcher.WOLLauncher;
 import org.apache.commons.lang.StringUtils;
 
+import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.net.InetAddress;
-import java.net.UnknownHostException;
+import java.io.IOException;
+import java.net.*;
+import java.nio.channels.DatagramChannel;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class HostHelper {
 
     private static final Logger LOGGER = java.util.logging.Logger.getLogger(HostHelper.class.getName());
 
-    @Nullable
-    private static Class<? extends ComputerLauncher> sshLauncherClass = null;
+    private static final HostExtractor NO_EXTRACTOR = new HostExtractor() {
+        @Override
+        public boolean isApplicable(@Nonnull Class<? extends ComputerLauncher> launcherClass) {
+            return true;
+        }
 
-    private static boolean initialized = false;
+        @Override
+        public String getHost(@Nonnull ComputerLauncher launcher) {
+            return null;
+        }
+    };
 
-    private static synchronized void ensureInitialized() {
-        if (initialized) {
-            return;
+    // Values are tied to the launcher class, so they do not keep plugins from being unloaded
+    private static final ClassValue<HostExtractor> EXTRACTORS = new ClassValue<HostExtractor>() {
+        @Override
+        protected HostExtractor computeValue(Class<?> type) {
+            final Class<? extends ComputerLauncher> launcherClass = type.asSubclass(ComputerLauncher.class);
+            for (HostExtractor extractor : HostExtractor.all()) {
+                if (extractor.isApplicable(launcherClass)) {
+                    return extractor;
+                }
+            }
+            return NO_EXTRACTOR;
         }
-        sshLauncherClass = tryLoadClass("hudson.plugins.sshslaves.SSHLauncher");
-        initialized = true;
+    };
+
+    @Nonnull
+    private static HostExtractor getExtractor(ComputerLauncher launcher) {
+        final HostExtractor extractor = EXTRACTORS.get(launcher.getClass());
+        if (extractor == NO_EXTRACTOR) {
+            // Not remembered, an extractor may still be provided by a plugin installed later on
+            EXTRACTORS.remove(launcher.getClass());
+        }
+        return extractor;
     }
 
-    @SuppressWarnings("unchecked")
     @Nullable
-    private static <T> Class<T> tryLoadClass(String name) {
-        try {
-            return (Class<T>) Class.forName(name);
-        } catch (ClassNotFoundException e) {
-            return null;
+    private static ComputerLauncher unpack(@Nullable ComputerLauncher launcher) {
+        if (launcher instanceof WOLLauncher) {
+            return WOLLauncher.unpackLauncher(launcher);
         }
+        return launcher;
     }
 
     @Nullable
-    public static String tryInferHost(@Nullable ComputerLauncher launcher) throws NoSuchMethodException, IllegalAccessException, InvocationTargetException {
+    public static String tryInferHost(@Nullable ComputerLauncher launcher) throws ReflectiveOperationException {
+        launcher = unpack(launcher);
         if (launcher == null) {
             return null;
         }
-        ensureInitialized();
-        if (launcher instanceof WOLLauncher) {
-            launcher = WOLLauncher.unpackLauncher(launcher);
-        }
-        if (sshLauncherClass != null && sshLauncherClass.isAssignableFrom(launcher.getClass())) {
-            return tryInferSSHLauncherHost(launcher);
-        }
-        return null;
+        return getExtractor(launcher).getHost(launcher);
     }
 
-    @Nullable
-    private static String tryInferSSHLauncherHost(ComputerLauncher launcher) throws NoSuchMethodException, InvocationTargetException, IllegalAccessException {
-        ensureInitialized();
-        if (sshLauncherClass == null) {
-            return null;
+    /**
+     * @return the TCP port the delegate launcher connects to, or {@code -1} if unknown
+     */
+    public static int tryInferPort(@Nullable ComputerLauncher launcher) throws ReflectiveOperationException {
+        launcher = unpack(launcher);
+        if (launcher == null) {
+            return -1;
         }
-        Method hostGetter = sshLauncherClass.getDeclaredMethod("getHost");
-        hostGetter.setAccessible(true);
-        return (String) hostGetter.invoke(launcher);
+        return getExtractor(launcher).getPort(launcher);
     }
 
     public static boolean isIpAddress(@Nullable String ipAddr) {
         if (StringUtils.isBlank(ipAddr)) {
             return false;
         }
-        return ipAddr.matches("^(([0-9]|[1-9][0-9]|1[0-9]{2}|2[0-4][0-9]|25[0-5])\\.){3}([0-9]|[1-9][0-9]|1[0-9]{2}|2[0-4][0-9]|25[0-5])$");
+        if (ipAddr.indexOf(':') >= 0) {
+            return isIpv6Address(ipAddr);
+        }
+        return isIpv4Address(ipAddr);
+    }
+
+    private static boolean isIpv4Address(String ipAddr) {
+        int octets = 0;
+        int value = -1;
+        for (int i = 0; i < ipAddr.length(); i++) {
+            char c = ipAddr.charAt(i);
+            if (c == '.') {
+                if (value < 0 || ++octets > 3) {
+                    return false;
+                }
+                value = -1;
+            } else if (c >= '0' && c <= '9') {
+                if (value == 0) {
+                    // Leading zeros are not allowed
+                    return false;
+                }
+                value = (value < 0 ? 0 : value * 10) + (c - '0');
+                if (value > 255) {
+                    return false;
+                }
+            } else {
+                return false;
+            }
+        }
+        return octets == 3 && value >= 0;
+    }
+
+    private static boolean isIpv6Address(String ipAddr) {
+        for (int i = 0; i < ipAddr.length(); i++) {
+            char c = ipAddr.charAt(i);
+            if (c == '%') {
+                // Scope identifiers are validated by InetAddress
+                break;
+            }
+            if (Character.digit(c, 16) < 0 && c != ':' && c != '.') {
+                return false;
+            }
+        }
+        try {
+            // Literals containing a colon are always parsed as IPv6 addresses, without any lookup
+            return InetAddress.getByName(ipAddr) instanceof Inet6Address;
+        } catch (UnknownHostException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Determines the local interface address the operating system would use to reach the given target.
+     * No packet is sent, connecting a datagram channel only performs the route lookup.
+     */
+    @Nullable
+    public static InterfaceAddress findRouteInterfaceAddress(@Nonnull InetAddress target) {
+        try (DatagramChannel channel = DatagramChannel.open()) {
+            channel.connect(new InetSocketAddress(target, 9));
+            final InetAddress local = ((InetSocketAddress) channel.getLocalAddress()).getAddress();
+            final NetworkInterface networkInterface = NetworkInterface.getByInetAddress(local);
+            if (networkInterface == null) {
+                return null;
+            }
+            for (InterfaceAddress interfaceAddress : networkInterface.getInterfaceAddresses()) {
+                if (local.equals(interfaceAddress.getAddress())) {
+                    return interfaceAddress;
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Unable to determine route to " + target, e);
+        }
+        return null;
+    }
+
+    public static boolean isInSubnet(@Nonnull InetAddress address, @Nonnull InterfaceAddress interfaceAddress) {
+        return Subnet.contains(interfaceAddress.getAddress().getAddress(), interfaceAddress.getNetworkPrefixLength(), address.getAddress());
     }
 
+    /**
+     * Computes the broadcast address of the subnet the given host is in.
+     * If the host is on a subnet the controller is attached to, the netmask of the interface is used.
+     * Otherwise, a directed broadcast to the /24 network of an IPv4 host is assumed.
+     */
     @Nullable
     public static String tryGuessBroadcastIp(@Nullable String host) throws UnknownHostException {
         if (StringUtils.isBlank(host)) {
             return null;
         }
-        if (!isIpAddress(host)) {
-            InetAddress address = InetAddress.getByName(host);
-            host = address.getHostAddress();
+        final InetAddress address = ResolutionCache.get().resolve(host);
+        final InterfaceAddress interfaceAddress = findRouteInterfaceAddress(address);
+        if (interfaceAddress != null && interfaceAddress.getBroadcast() != null && isInSubnet(address, interfaceAddress)) {
+            return interfaceAddress.getBroadcast().getHostAddress();
         }
-        if (!isIpAddress(host)) {
+        if (!(address instanceof Inet4Address)) {
             return null;
         }
-        String[] parts = host.split("\\.");
-        return parts[0] + "." + parts[1] + "." + parts[2] + ".255";
+        final byte[] bytes = address.getAddress();
+        bytes[3] = (byte) 0xff;
+        return InetAddress.getByAddress(bytes).getHostAddress();
     }
 
 }
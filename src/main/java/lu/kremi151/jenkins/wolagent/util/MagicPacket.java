@@ -0,0 +1,162 @@
+/*
+ * Copyright 2019 Michel Kremer (kremi151)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package lu.kremi151.jenkins.wolagent.util;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+
+/**
+ * Immutable, pre-encoded magic packet for a single MAC address, optionally followed by a SecureOn password.
+ * The payload is built once and reused for every send.
+ */
+public final class MagicPacket {
+
+    private static final int MAC_LENGTH = 6;
+    private static final int REPETITIONS = 16;
+    private static final int SECURE_ON_SHORT_LENGTH = 4;
+    private static final int SECURE_ON_LONG_LENGTH = 6;
+
+    private final String macAddress;
+    private final ByteBuffer payload;
+
+    private MagicPacket(String macAddress, byte[] macBytes, @Nullable byte[] password) {
+        this.macAddress = macAddress;
+        ByteBuffer payload = ByteBuffer.allocateDirect(MAC_LENGTH + REPETITIONS * MAC_LENGTH + (password == null ? 0 : password.length));
+        for (int i = 0; i < MAC_LENGTH; i++) {
+            payload.put((byte) 0xff);
+        }
+        for (int i = 0; i < REPETITIONS; i++) {
+            payload.put(macBytes);
+        }
+        if (password != null) {
+            payload.put(password);
+        }
+        payload.flip();
+        this.payload = payload.asReadOnlyBuffer();
+    }
+
+    /**
+     * Parses a MAC address of the form {@code 01:23:45:67:89:ab} or {@code 01-23-45-67-89-ab}.
+     *
+     * @throws IllegalArgumentException if the MAC address is malformed
+     */
+    @Nonnull
+    public static MagicPacket parse(String macStr) throws IllegalArgumentException {
+        return parse(macStr, null);
+    }
+
+    /**
+     * Parses a MAC address and an optional SecureOn password, the password being given as 4 or 6 hex bytes
+     * in the same notation as the MAC address.
+     *
+     * @throws IllegalArgumentException if the MAC address or the password is malformed
+     */
+    @Nonnull
+    public static MagicPacket parse(String macStr, @Nullable String secureOnPassword) throws IllegalArgumentException {
+        if (macStr == null) {
+            throw new IllegalArgumentException("Invalid MAC address");
+        }
+        macStr = macStr.trim();
+        final byte[] macBytes = parseHexBytes(macStr, MAC_LENGTH);
+        if (macBytes == null) {
+            throw new IllegalArgumentException("Invalid MAC address");
+        }
+        byte[] password = null;
+        if (secureOnPassword != null && !secureOnPassword.trim().isEmpty()) {
+            final String trimmed = secureOnPassword.trim();
+            password = parseHexBytes(trimmed, SECURE_ON_SHORT_LENGTH);
+            if (password == null) {
+                password = parseHexBytes(trimmed, SECURE_ON_LONG_LENGTH);
+            }
+            if (password == null) {
+                throw new IllegalArgumentException("Invalid SecureOn password");
+            }
+        }
+        return new MagicPacket(macStr, macBytes, password);
+    }
+
+    @Nullable
+    private static byte[] parseHexBytes(String str, int length) {
+        if (str.length() != length * 3 - 1) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            int offset = i * 3;
+            if (i > 0) {
+                char separator = str.charAt(offset - 1);
+                if (separator != ':' && separator != '-') {
+                    return null;
+                }
+            }
+            int high = Character.digit(str.charAt(offset), 16);
+            int low = Character.digit(str.charAt(offset + 1), 16);
+            if (high < 0 || low < 0) {
+                return null;
+            }
+            bytes[i] = (byte) ((high << 4) | low);
+        }
+        return bytes;
+    }
+
+    public static boolean isValidSecureOnPassword(@Nullable String secureOnPassword) {
+        if (secureOnPassword == null || secureOnPassword.trim().isEmpty()) {
+            return true;
+        }
+        final String trimmed = secureOnPassword.trim();
+        return parseHexBytes(trimmed, SECURE_ON_SHORT_LENGTH) != null || parseHexBytes(trimmed, SECURE_ON_LONG_LENGTH) != null;
+    }
+
+    public static boolean isValidMacAddress(String macStr) {
+        try {
+            parse(macStr);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    public String getMacAddress() {
+        return macAddress;
+    }
+
+    /**
+     * @return a read-only view of the payload, positioned at its start
+     */
+    @Nonnull
+    public ByteBuffer getPayload() {
+        return payload.duplicate();
+    }
+
+    /**
+     * Sends the payload without allocating a new buffer. Sends of the same packet are serialized.
+     */
+    public synchronized void sendTo(DatagramChannel channel, SocketAddress address) throws IOException {
+        payload.rewind();
+        channel.send(payload, address);
+    }
+
+    @Override
+    public String toString() {
+        return macAddress;
+    }
+
+}
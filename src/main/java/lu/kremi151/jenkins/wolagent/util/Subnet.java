@@ -0,0 +1,113 @@
+/*
+ * Copyright 2019 Michel Kremer (kremi151)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package lu.kremi151.jenkins.wolagent.util;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.Serializable;
+import java.net.InetAddress;
+import java.net.InterfaceAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+
+/**
+ * An address of a network interface along with its prefix length, serializable so agents can report their subnets.
+ */
+public final class Subnet implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final byte[] address;
+    private final int prefixLength;
+    @CheckForNull
+    private final String broadcast;
+
+    public Subnet(@Nonnull byte[] address, int prefixLength, @CheckForNull String broadcast) {
+        this.address = address.clone();
+        this.prefixLength = prefixLength;
+        this.broadcast = broadcast;
+    }
+
+    @Nonnull
+    public static Subnet of(@Nonnull InterfaceAddress interfaceAddress) {
+        final InetAddress broadcast = interfaceAddress.getBroadcast();
+        return new Subnet(
+                interfaceAddress.getAddress().getAddress(),
+                interfaceAddress.getNetworkPrefixLength(),
+                broadcast == null ? null : broadcast.getHostAddress()
+        );
+    }
+
+    /**
+     * @return the subnets of all non-loopback interfaces which are up
+     */
+    @Nonnull
+    public static List<Subnet> ofLocalInterfaces() throws SocketException {
+        final List<Subnet> subnets = new ArrayList<>();
+        final Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
+        while (interfaces != null && interfaces.hasMoreElements()) {
+            final NetworkInterface networkInterface = interfaces.nextElement();
+            if (!networkInterface.isUp() || networkInterface.isLoopback()) {
+                continue;
+            }
+            for (InterfaceAddress interfaceAddress : networkInterface.getInterfaceAddresses()) {
+                subnets.add(of(interfaceAddress));
+            }
+        }
+        return subnets;
+    }
+
+    public boolean contains(@Nonnull InetAddress candidate) {
+        return contains(address, prefixLength, candidate.getAddress());
+    }
+
+    static boolean contains(byte[] network, int prefixLength, byte[] candidate) {
+        if (network.length != candidate.length) {
+            return false;
+        }
+        int prefix = prefixLength;
+        for (int i = 0; i < network.length && prefix > 0; i++, prefix -= 8) {
+            final int mask = prefix >= 8 ? 0xff : (0xff << (8 - prefix)) & 0xff;
+            if ((network[i] & mask) != (candidate[i] & mask)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the broadcast address of this subnet, or {@code null} for IPv6 subnets
+     */
+    @CheckForNull
+    public String getBroadcast() {
+        return broadcast;
+    }
+
+    @Override
+    public String toString() {
+        try {
+            return InetAddress.getByAddress(address).getHostAddress() + "/" + prefixLength;
+        } catch (java.net.UnknownHostException e) {
+            return Arrays.toString(address) + "/" + prefixLength;
+        }
+    }
+
+}
@@ -16,8 +16,14 @@
 
 package lu.kremi151.jenkins.wolagent.util;
 
+import lu.kremi151.jenkins.wolagent.host.ResolutionCache;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.net.*;
+import java.nio.channels.DatagramChannel;
+import java.util.*;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -25,41 +31,190 @@ public class WakeOnLAN {
 
     private static final Logger LOGGER = java.util.logging.Logger.getLogger(WakeOnLAN.class.getName());
 
-    private static final int PORT = 9;
+    public static final int DEFAULT_PORT = 9;
+    public static final int MAX_PORT = 65535;
+
+    @Nullable
+    private static DatagramChannel channel = null;
 
     public static void sendMagicPacket(String broadcastIpAddr, String macAddr) throws IOException {
-        LOGGER.log(Level.INFO, "Sending magic packet to broadcast IP {0} for MAC {1}", new Object[]{ broadcastIpAddr, macAddr });
-        byte[] macBytes = convertMacToBytes(macAddr);
-        byte[] bytes = new byte[6 + 16 * macBytes.length];
-        for (int i = 0; i < 6; i++) {
-            bytes[i] = (byte) 0xff;
-        }
-        for (int i = 6; i < bytes.length; i += macBytes.length) {
-            System.arraycopy(macBytes, 0, bytes, i, macBytes.length);
+        final MagicPacket packet;
+        try {
+            packet = MagicPacket.parse(macAddr);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage(), e);
         }
+        sendMagicPacket(broadcastIpAddr, packet);
+    }
+
+    public static void sendMagicPacket(String broadcastIpAddr, MagicPacket packet) throws IOException {
+        sendMagicPacket(broadcastIpAddr, DEFAULT_PORT, packet);
+    }
 
-        InetAddress address = InetAddress.getByName(broadcastIpAddr);
-        DatagramPacket packet = new DatagramPacket(bytes, bytes.length, address, PORT);
-        DatagramSocket socket = new DatagramSocket();
-        socket.send(packet);
-        socket.close();
+    public static void sendMagicPacket(String broadcastIpAddr, int port, MagicPacket packet) throws IOException {
+        LOGGER.log(Level.INFO, "Sending magic packet to {0}:{1} for MAC {2}", new Object[]{ broadcastIpAddr, port, packet });
+        WakeResult result = sendMagicPackets(Collections.singletonList(new WakeTarget(packet, broadcastIpAddr, port))).get(0);
+        if (result.getError() != null) {
+            throw result.getError();
+        }
         LOGGER.log(Level.INFO, "Magic packet has been sent");
     }
 
-    private static byte[] convertMacToBytes(String macStr) throws IllegalArgumentException {
-        byte[] bytes = new byte[6];
-        String[] hex = macStr.split("([:\\-])");
-        if (hex.length != 6) {
-            throw new IllegalArgumentException("Invalid MAC address");
+    /**
+     * @return the given UDP port, or {@link #DEFAULT_PORT} if it is unset or out of range
+     */
+    public static int effectivePort(int port) {
+        return port > 0 && port <= MAX_PORT ? port : DEFAULT_PORT;
+    }
+
+    /**
+     * Sends magic packets to all given targets through a single shared channel.
+     * Targets are grouped by address, so each address gets resolved only once whatever the number of ports.
+     *
+     * @return one result per target, in the same order as the targets
+     */
+    @Nonnull
+    public static List<WakeResult> sendMagicPackets(@Nonnull Collection<WakeTarget> targets) {
+        final Map<String, List<WakeTarget>> targetsByBroadcast = new LinkedHashMap<>();
+        for (WakeTarget target : targets) {
+            targetsByBroadcast.computeIfAbsent(target.getBroadcastIpAddr(), k -> new ArrayList<>()).add(target);
         }
-        try {
-            for (int i = 0; i < 6; i++) {
-                bytes[i] = (byte) Integer.parseInt(hex[i], 16);
+
+        final Map<WakeTarget, WakeResult> results = new IdentityHashMap<>();
+        for (Map.Entry<String, List<WakeTarget>> group : targetsByBroadcast.entrySet()) {
+            final InetAddress address;
+            try {
+                address = ResolutionCache.get().resolve(group.getKey());
+            } catch (UnknownHostException e) {
+                for (WakeTarget target : group.getValue()) {
+                    results.put(target, new WakeResult(target, e));
+                }
+                continue;
             }
-        } catch (NumberFormatException e) {
-            throw new IllegalArgumentException("Invalid hex digit in MAC address");
+            for (WakeTarget target : group.getValue()) {
+                IOException error = null;
+                try {
+                    if (target.getPort() <= 0 || target.getPort() > MAX_PORT) {
+                        throw new IOException("Invalid port " + target.getPort());
+                    }
+                    send(target.getPacket(), new InetSocketAddress(address, target.getPort()));
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Unable to send magic packet to " + target, e);
+                    error = e;
+                }
+                results.put(target, new WakeResult(target, error));
+            }
+        }
+
+        final List<WakeResult> ordered = new ArrayList<>(results.size());
+        for (WakeTarget target : targets) {
+            ordered.add(results.get(target));
+        }
+        return ordered;
+    }
+
+    private static void send(MagicPacket packet, InetSocketAddress address) throws IOException {
+        final DatagramChannel channel = ensureChannel();
+        try {
+            packet.sendTo(channel, address);
+        } catch (IOException e) {
+            // The channel may have been closed by an interrupt, so drop it to have it reopened on the next send
+            closeChannel(channel);
+            throw e;
+        }
+    }
+
+    private static synchronized DatagramChannel ensureChannel() throws IOException {
+        if (channel == null || !channel.isOpen()) {
+            channel = DatagramChannel.open();
+            channel.setOption(StandardSocketOptions.SO_BROADCAST, true);
+        }
+        return channel;
+    }
+
+    private static synchronized void closeChannel(DatagramChannel toClose) {
+        if (channel == toClose) {
+            channel = null;
+        }
+        try {
+            toClose.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Unable to close datagram channel", e);
+        }
+    }
+
+    public static synchronized void close() {
+        if (channel != null) {
+            closeChannel(channel);
         }
-        return bytes;
+    }
+
+    public static final class WakeTarget {
+
+        private final MagicPacket packet;
+        private final String broadcastIpAddr;
+        private final int port;
+
+        public WakeTarget(MagicPacket packet, String broadcastIpAddr) {
+            this(packet, broadcastIpAddr, DEFAULT_PORT);
+        }
+
+        public WakeTarget(MagicPacket packet, String broadcastIpAddr, int port) {
+            this.packet = packet;
+            this.broadcastIpAddr = broadcastIpAddr;
+            this.port = port;
+        }
+
+        /**
+         * @throws IllegalArgumentException if the MAC address is malformed
+         */
+        public WakeTarget(String macAddress, String broadcastIpAddr) throws IllegalArgumentException {
+            this(MagicPacket.parse(macAddress), broadcastIpAddr);
+        }
+
+        public MagicPacket getPacket() {
+            return packet;
+        }
+
+        public String getBroadcastIpAddr() {
+            return broadcastIpAddr;
+        }
+
+        public int getPort() {
+            return port;
+        }
+
+        @Override
+        public String toString() {
+            return packet + " via " + broadcastIpAddr + ":" + port;
+        }
+
+    }
+
+    public static final class WakeResult {
+
+        private final WakeTarget target;
+        @Nullable
+        private final IOException error;
+
+        private WakeResult(WakeTarget target, @Nullable IOException error) {
+            this.target = target;
+            this.error = error;
+        }
+
+        public WakeTarget getTarget() {
+            return target;
+        }
+
+        @Nullable
+        public IOException getError() {
+            return error;
+        }
+
+        public boolean isSuccess() {
+            return error == null;
+        }
+
     }
 
 }
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2019 Michel Kremer (kremi151)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package lu.kremi151.jenkins.wolagent.wake;
+
+import antlr.ANTLRException;
+import hudson.Extension;
+import hudson.model.Label;
+import hudson.model.ManagementLink;
+import jenkins.model.Jenkins;
+import lu.kremi151.jenkins.wolagent.Messages;
+import org.kohsuke.stapler.QueryParameter;
+import org.kohsuke.stapler.StaplerResponse;
+import org.kohsuke.stapler.interceptor.RequirePOST;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Lets administrators wake all nodes matching a label expression, either from the UI or through
+ * {@code POST /manage/wol-fleet/wake?label=...}. Progress is streamed back as plain text, closing the connection
+ * stops waiting for the nodes.
+ */
+@Extension
+public class FleetWakeManagementLink extends ManagementLink {
+
+    @Override
+    public String getIconFileName() {
+        return "computer.png";
+    }
+
+    @Override
+    public String getDisplayName() {
+        return Messages.FleetWakeManagementLink_DisplayName();
+    }
+
+    @Override
+    public String getDescription() {
+        return Messages.FleetWakeManagementLink_Description();
+    }
+
+    @Override
+    public String getUrlName() {
+        return "wol-fleet";
+    }
+
+    @RequirePOST
+    public void doWake(StaplerResponse rsp, @QueryParameter String label, @QueryParameter boolean connect) throws IOException, InterruptedException {
+        Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+        final Label parsed;
+        try {
+            parsed = Label.parseExpression(label);
+        } catch (ANTLRException | IllegalArgumentException e) {
+            rsp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            rsp.setContentType("text/plain;charset=UTF-8");
+            rsp.getWriter().println("Invalid label expression: " + e.getMessage());
+            return;
+        }
+        rsp.setContentType("text/plain;charset=UTF-8");
+        final PrintWriter out = rsp.getWriter();
+        try {
+            FleetWaker.await(FleetWaker.wake(parsed, connect, out), out);
+        } catch (ExecutionException e) {
+            out.println("Failed: " + e.getCause().getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2019 Michel Kremer (kremi151)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package lu.kremi151.jenkins.wolagent.wake;
+
+import hudson.model.Computer;
+import hudson.model.Label;
+import hudson.model.Node;
+import hudson.slaves.ComputerLauncher;
+import hudson.slaves.SlaveComputer;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.LogTaskListener;
+import hudson.util.NamingThreadFactory;
+import jenkins.model.Jenkins;
+import lu.kremi151.jenkins.wolagent.launcher.WOLLauncher;
+import lu.kremi151.jenkins.wolagent.slave.WOLSlave;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Wakes all nodes matching a label at once and reports the progress of each node as it happens.
+ * Packets are sent from a small bounded pool, while waiting for the nodes does not block any thread.
+ */
+public final class FleetWaker {
+
+    private static final Logger LOGGER = java.util.logging.Logger.getLogger(FleetWaker.class.getName());
+
+    private static final int POOL_SIZE = Integer.getInteger(FleetWaker.class.getName() + ".poolSize", 8);
+
+    private static final ThreadPoolExecutor EXECUTOR;
+
+    static {
+        EXECUTOR = new ThreadPoolExecutor(
+                POOL_SIZE, POOL_SIZE,
+                60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                new NamingThreadFactory(new DaemonThreadFactory(), "WOLAgent.FleetWaker")
+        );
+        EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    private FleetWaker() {
+    }
+
+    /**
+     * @param label   the label nodes have to match
+     * @param connect whether to launch the agents once their nodes are reachable
+     * @param out     receives one line per progress event, may be written to from several threads
+     * @return a future completing with the number of nodes which could not be woken up, cancelling it stops
+     * waiting for all nodes
+     */
+    @Nonnull
+    public static CompletableFuture<Integer> wake(@Nonnull Label label, boolean connect, @Nonnull PrintWriter out) {
+        final List<WOLSlave> slaves = new ArrayList<>();
+        for (Node node : Jenkins.get().getNodes()) {
+            if (node instanceof WOLSlave && label.matches(node)) {
+                slaves.add((WOLSlave) node);
+            }
+        }
+        report(out, "Waking " + slaves.size() + " node(s) matching " + label.getExpression());
+
+        final AtomicInteger failures = new AtomicInteger();
+        final List<CompletableFuture<Void>> wakes = new ArrayList<>(slaves.size());
+        final CompletableFuture<?>[] futures = new CompletableFuture<?>[slaves.size()];
+        for (int i = 0; i < slaves.size(); i++) {
+            final WOLSlave slave = slaves.get(i);
+            final CompletableFuture<Void> wake = wake(slave, connect, out);
+            wakes.add(wake);
+            futures[i] = wake.exceptionally(t -> {
+                failures.incrementAndGet();
+                if (!wake.isCancelled()) {
+                    final Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+                    report(out, "[" + slave.getNodeName() + "] Failed: " + cause.getMessage());
+                }
+                return null;
+            });
+        }
+        final CompletableFuture<Integer> done = CompletableFuture.allOf(futures).thenApply(v -> {
+            report(out, "Done, " + (slaves.size() - failures.get()) + " of " + slaves.size() + " node(s) are up");
+            return failures.get();
+        });
+        done.whenComplete((v, t) -> {
+            if (done.isCancelled()) {
+                for (CompletableFuture<Void> wake : wakes) {
+                    wake.cancel(true);
+                }
+            }
+        });
+        return done;
+    }
+
+    /**
+     * Waits for a wake started by {@link #wake(Label, boolean, PrintWriter)}, cancelling it if the waiting thread
+     * gets interrupted or once {@code out} fails, i.e. the client went away.
+     *
+     * @return the number of nodes which could not be woken up
+     */
+    public static int await(@Nonnull CompletableFuture<Integer> wake, @Nonnull PrintWriter out) throws InterruptedException, ExecutionException {
+        try {
+            while (true) {
+                try {
+                    return wake.get(1L, TimeUnit.SECONDS);
+                } catch (TimeoutException e) {
+                    // Print writers swallow write errors, so a client which went away is only noticed this way
+                    if (out.checkError()) {
+                        wake.cancel(true);
+                        throw new ExecutionException(new IOException("Client disconnected"));
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            wake.cancel(true);
+            throw e;
+        }
+    }
+
+    private static CompletableFuture<Void> wake(WOLSlave slave, boolean connect, PrintWriter out) {
+        final String name = slave.getNodeName();
+        final Computer computer = slave.toComputer();
+        if (computer == null) {
+            return failed(new IllegalStateException("Node has no computer"));
+        }
+        if (computer.isOnline()) {
+            report(out, "[" + name + "] Already online");
+            return CompletableFuture.completedFuture(null);
+        }
+        final ComputerLauncher launcher = computer instanceof SlaveComputer ? ((SlaveComputer) computer).getLauncher() : null;
+        if (!(launcher instanceof WOLLauncher)) {
+            return failed(new IllegalStateException("Node is not launched through Wake on LAN"));
+        }
+        final long start = System.nanoTime();
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+        CompletableFuture.supplyAsync(() -> {
+            if (result.isDone()) {
+                throw new CancellationException();
+            }
+            try {
+                report(out, "[" + name + "] Sending magic packet");
+                return ((WOLLauncher) launcher).wake((SlaveComputer) computer, new LogTaskListener(LOGGER, Level.FINE));
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, EXECUTOR).whenComplete((reachable, t) -> {
+            if (t != null) {
+                result.completeExceptionally(t instanceof CompletionException && t.getCause() != null ? t.getCause() : t);
+                return;
+            }
+            // Only stops waiting, launches joining the same wake keep waiting for the node
+            result.whenComplete((v, e) -> {
+                if (result.isCancelled()) {
+                    reachable.cancel(true);
+                }
+            });
+            reachable.whenComplete((v, e) -> {
+                if (e != null) {
+                    result.completeExceptionally(e);
+                    return;
+                }
+                report(out, "[" + name + "] Reachable after " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+                if (connect && computer.isOffline() && !computer.isConnecting()) {
+                    report(out, "[" + name + "] Launching agent");
+                    computer.connect(false);
+                }
+                result.complete(null);
+            });
+        });
+        return result;
+    }
+
+    private static CompletableFuture<Void> failed(Throwable t) {
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        future.completeExceptionally(t);
+        return future;
+    }
+
+    private static void report(PrintWriter out, String line) {
+        synchronized (out) {
+            out.println(line);
+            out.flush();
+        }
+    }
+
+    public static void shutdown() {
+        EXECUTOR.shutdownNow();
+    }
+
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2019 Michel Kremer (kremi151)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package lu.kremi151.jenkins.wolagent.wake;
+
+import hudson.model.Computer;
+import hudson.remoting.VirtualChannel;
+import lu.kremi151.jenkins.wolagent.remoting.callables.SendMagicPackets;
+import lu.kremi151.jenkins.wolagent.util.MagicPacket;
+import lu.kremi151.jenkins.wolagent.util.WakeOnLAN;
+import lu.kremi151.jenkins.wolagent.util.WakeOnLAN.WakeResult;
+import lu.kremi151.jenkins.wolagent.util.WakeOnLAN.WakeTarget;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Sends the magic packets of a wake, either from the controller or from an agent relaying them.
+ */
+public abstract class PacketSender {
+
+    private static final Logger LOGGER = java.util.logging.Logger.getLogger(PacketSender.class.getName());
+
+    /**
+     * How long to wait for a relay to send the packets before sending them from the controller, in milliseconds.
+     */
+    private static final long RELAY_TIMEOUT = Long.getLong(PacketSender.class.getName() + ".relayTimeout", 5000L);
+
+    public static final PacketSender CONTROLLER = new PacketSender() {
+        @Override
+        public void send(@Nonnull List<WakeTarget> targets, int count) throws IOException {
+            IOException error = null;
+            boolean sent = false;
+            for (int i = 0; i < count; i++) {
+                for (WakeResult result : WakeOnLAN.sendMagicPackets(targets)) {
+                    if (result.isSuccess()) {
+                        sent = true;
+                    } else if (error == null) {
+                        error = result.getError();
+                    }
+                }
+            }
+            if (!sent && error != null) {
+                throw error;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "controller";
+        }
+    };
+
+    /**
+     * Sends each target its packet {@code count} times. Failing targets are skipped,
+     * sending only fails if no packet could be sent at all.
+     */
+    public abstract void send(@Nonnull List<WakeTarget> targets, int count) throws IOException;
+
+    /**
+     * @param nodeAddress address of the node to wake, the relay also broadcasts on its subnet if attached to it
+     * @param localPort   UDP port used for that broadcast
+     */
+    @Nonnull
+    public static PacketSender relay(@Nonnull Computer relay, @CheckForNull String nodeAddress, int localPort) {
+        return new RelaySender(relay, nodeAddress, localPort);
+    }
+
+    private static final class RelaySender extends PacketSender {
+
+        private final Computer relay;
+        @CheckForNull
+        private final String nodeAddress;
+        private final int localPort;
+
+        private RelaySender(Computer relay, @CheckForNull String nodeAddress, int localPort) {
+            this.relay = relay;
+            this.nodeAddress = nodeAddress;
+            this.localPort = localPort;
+        }
+
+        @Override
+        public void send(@Nonnull List<WakeTarget> targets, int count) throws IOException {
+            final VirtualChannel channel = relay.getChannel();
+            if (channel != null && !targets.isEmpty()) {
+                // All targets of a wake share the same packet
+                final MagicPacket packet = targets.get(0).getPacket();
+                final List<String> addresses = new ArrayList<>(targets.size());
+                final List<Integer> ports = new ArrayList<>(targets.size());
+                for (WakeTarget target : targets) {
+                    addresses.add(target.getBroadcastIpAddr());
+                    ports.add(target.getPort());
+                }
+                Future<Integer> relayed = null;
+                try {
+                    // Bounded, a relay with a stuck channel must not hold the wake or the thread sending it
+                    relayed = channel.callAsync(new SendMagicPackets(toBytes(packet.getPayload()), addresses, ports, nodeAddress, localPort, count));
+                    relayed.get(RELAY_TIMEOUT, TimeUnit.MILLISECONDS);
+                    return;
+                } catch (IOException | ExecutionException e) {
+                    LOGGER.log(Level.WARNING, "Unable to relay magic packet for MAC " + packet + " through " + relay.getName() + ", sending it from the controller", e);
+                } catch (TimeoutException e) {
+                    LOGGER.log(Level.WARNING, "Relay {0} did not send the magic packet for MAC {1} within {2} ms, sending it from the controller", new Object[]{relay.getName(), packet, RELAY_TIMEOUT});
+                    relayed.cancel(true);
+                } catch (InterruptedException e) {
+                    relayed.cancel(true);
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while relaying magic packet through " + relay.getName(), e);
+                }
+            } else {
+                LOGGER.log(Level.INFO, "Relay {0} went offline, sending magic packet from the controller", relay.getName());
+            }
+            CONTROLLER.send(targets, count);
+        }
+
+        private static byte[] toBytes(ByteBuffer buffer) {
+            final byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            return bytes;
+        }
+
+        @Override
+        public String toString() {
+            return "relay " + relay.getName();
+        }
+
+    }
+
+}
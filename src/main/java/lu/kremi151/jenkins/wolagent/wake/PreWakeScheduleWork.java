@@ -0,0 +1,67 @@
+/*
+ * Copyright 2019 Michel Kremer (kremi151)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package lu.kremi151.jenkins.wolagent.wake;
+
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.TaskListener;
+import jenkins.model.Jenkins;
+import lu.kremi151.jenkins.wolagent.WOLGlobalConfiguration;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pre-wakes nodes ahead of recurring queue activity learned by {@link QueueHistory}.
+ */
+@Extension
+public class PreWakeScheduleWork extends AsyncPeriodicWork {
+
+    private int lastTriggeredSlot = -1;
+
+    public PreWakeScheduleWork() {
+        super("WOL agent pre-wake schedule");
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return TimeUnit.MINUTES.toMillis(5);
+    }
+
+    @Override
+    protected void execute(TaskListener listener) {
+        final WOLGlobalConfiguration configuration = WOLGlobalConfiguration.get();
+        if (!configuration.isLearnQueueSchedule()) {
+            return;
+        }
+        final long target = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(configuration.getPreWakeLeadMinutes());
+        final int slot = QueueHistory.slotOf(LocalDateTime.ofInstant(Instant.ofEpochMilli(target), ZoneId.systemDefault()));
+        if (slot == lastTriggeredSlot) {
+            return;
+        }
+        lastTriggeredSlot = slot;
+        for (String expression : QueueHistory.get().getRecurringLabels(target)) {
+            PreWaker.preWakeFor(
+                    QueueHistory.ANY_LABEL.equals(expression) ? null : Jenkins.get().getLabel(expression),
+                    "recurring queue activity for label '" + expression + "'"
+            );
+        }
+    }
+
+}
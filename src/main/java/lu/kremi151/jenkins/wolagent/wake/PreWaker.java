@@ -0,0 +1,128 @@
+/*
+ * Copyright 2019 Michel Kremer (kremi151)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package lu.kremi151.jenkins.wolagent.wake;
+
+import hudson.model.Computer;
+import hudson.model.Label;
+import hudson.model.Node;
+import hudson.model.Queue;
+import hudson.slaves.ComputerLauncher;
+import hudson.slaves.SlaveComputer;
+import hudson.util.LogTaskListener;
+import jenkins.model.Jenkins;
+import lu.kremi151.jenkins.wolagent.launcher.WOLLauncher;
+import lu.kremi151.jenkins.wolagent.retention.Capacity;
+import lu.kremi151.jenkins.wolagent.slave.PowerState;
+import lu.kremi151.jenkins.wolagent.slave.WOLSlave;
+import lu.kremi151.jenkins.wolagent.slave.WOLSlaveComputer;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Wakes sleeping nodes before Jenkins decides to launch them, so that queued builds do not wait for the whole boot.
+ */
+public final class PreWaker {
+
+    private static final Logger LOGGER = java.util.logging.Logger.getLogger(PreWaker.class.getName());
+
+    private PreWaker() {
+    }
+
+    /**
+     * Pre-wakes one sleeping node which could take the given item, unless an idle online executor, a waking node
+     * or a node finishing its build within the boot time will take it, like {@code WOLRetentionStrategy} decides.
+     */
+    public static void preWakeFor(Queue.BuildableItem item) {
+        if (Capacity.canBeTakenByOnlineComputer(item, null)) {
+            return;
+        }
+        for (Node node : Jenkins.get().getNodes()) {
+            if (!(node instanceof WOLSlave) || !((WOLSlave) node).isPreWakeOnQueue() || node.canTake(item) != null) {
+                continue;
+            }
+            final Computer computer = node.toComputer();
+            if (!(computer instanceof WOLSlaveComputer) || computer.isTemporarilyOffline()
+                    || ((WOLSlaveComputer) computer).getPowerState() != PowerState.ASLEEP) {
+                continue;
+            }
+            if (isCovered(item, (WOLSlaveComputer) computer)) {
+                LOGGER.log(Level.FINE, "Not pre-waking any node, {0} will be taken by a waking node or a node finishing its build sooner", item.task.getName());
+            } else {
+                preWake((WOLSlave) node, "queued item " + item.task.getName());
+            }
+            return;
+        }
+    }
+
+    /**
+     * Items which became buildable earlier take the available executors first.
+     */
+    private static boolean isCovered(Queue.BuildableItem item, WOLSlaveComputer sleeping) {
+        final Node node = sleeping.getNode();
+        if (node == null) {
+            return true;
+        }
+        final long now = System.currentTimeMillis();
+        final Capacity capacity = new Capacity(sleeping);
+        for (Queue.BuildableItem earlier : Queue.getInstance().getBuildableItems()) {
+            if (earlier.getId() == item.getId() || earlier.buildableStartMilliseconds > item.buildableStartMilliseconds
+                    || node.canTake(earlier) != null || Capacity.canBeTakenByOnlineComputer(earlier, null)) {
+                continue;
+            }
+            capacity.take(earlier, now - earlier.buildableStartMilliseconds);
+        }
+        return capacity.take(item, now - item.buildableStartMilliseconds);
+    }
+
+    /**
+     * Pre-wakes all sleeping nodes matching the given label, or all nodes in normal mode if no label is given.
+     */
+    public static void preWakeFor(@Nullable Label label, String reason) {
+        for (Node node : Jenkins.get().getNodes()) {
+            if (!(node instanceof WOLSlave) || !((WOLSlave) node).isPreWakeOnQueue()) {
+                continue;
+            }
+            if (label == null ? node.getMode() == Node.Mode.NORMAL : label.matches(node)) {
+                preWake((WOLSlave) node, reason);
+            }
+        }
+    }
+
+    public static void preWake(WOLSlave slave, String reason) {
+        final Computer computer = slave.toComputer();
+        if (!(computer instanceof SlaveComputer) || computer.isOnline() || computer.isConnecting() || computer.isTemporarilyOffline()) {
+            return;
+        }
+        final ComputerLauncher launcher = ((SlaveComputer) computer).getLauncher();
+        if (!(launcher instanceof WOLLauncher)) {
+            return;
+        }
+        LOGGER.log(Level.INFO, "Pre-waking node {0} because of {1}", new Object[]{slave.getNodeName(), reason});
+        // Callers may hold the queue lock, so the packet is sent asynchronously
+        Computer.threadPoolForRemoting.submit(() -> {
+            try {
+                ((WOLLauncher) launcher).wake((SlaveComputer) computer, new LogTaskListener(LOGGER, Level.FINE));
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Unable to pre-wake node " + slave.getNodeName(), e);
+            }
+        });
+    }
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2019 Michel Kremer (kremi151)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package lu.kremi151.jenkins.wolagent.wake;
+
+import hudson.model.Label;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers at which times of the day builds for a given label became buildable,
+ * so that nodes can be woken up ahead of recurring schedules such as nightly builds.
+ * The history is kept in memory only.
+ */
+public final class QueueHistory {
+
+    static final int SLOT_MINUTES = 15;
+    static final int SLOTS_PER_DAY = 24 * 60 / SLOT_MINUTES;
+
+    /**
+     * Number of distinct days a slot must have been seen on to be considered recurring.
+     */
+    private static final int MIN_OCCURRENCES = 3;
+
+    /**
+     * Slots which have not been seen for longer than this are forgotten.
+     */
+    private static final long MAX_AGE_DAYS = 8;
+
+    /**
+     * Key used for tasks without an assigned label.
+     */
+    public static final String ANY_LABEL = "";
+
+    private static final QueueHistory INSTANCE = new QueueHistory();
+
+    private final Map<String, LabelHistory> histories = new ConcurrentHashMap<>();
+
+    private QueueHistory() {
+    }
+
+    @Nonnull
+    public static QueueHistory get() {
+        return INSTANCE;
+    }
+
+    public void record(@Nullable Label label, long timestamp) {
+        final String key = label == null ? ANY_LABEL : label.getExpression();
+        histories.computeIfAbsent(key, k -> new LabelHistory()).record(toLocal(timestamp));
+    }
+
+    /**
+     * @return the expressions of all labels which were regularly seen at the time of day of the given timestamp
+     */
+    @Nonnull
+    public List<String> getRecurringLabels(long timestamp) {
+        final LocalDateTime time = toLocal(timestamp);
+        final List<String> labels = new ArrayList<>();
+        for (Map.Entry<String, LabelHistory> entry : histories.entrySet()) {
+            if (entry.getValue().isRecurring(time)) {
+                labels.add(entry.getKey());
+            }
+        }
+        return labels;
+    }
+
+    static int slotOf(LocalDateTime time) {
+        return (time.getHour() * 60 + time.getMinute()) / SLOT_MINUTES;
+    }
+
+    private static LocalDateTime toLocal(long timestamp) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZoneId.systemDefault());
+    }
+
+    private static final class LabelHistory {
+
+        private final int[] occurrences = new int[SLOTS_PER_DAY];
+        private final long[] lastSeenDay = new long[SLOTS_PER_DAY];
+
+        private synchronized void record(LocalDateTime time) {
+            final int slot = slotOf(time);
+            final long day = time.toLocalDate().toEpochDay();
+            if (occurrences[slot] > 0 && lastSeenDay[slot] == day) {
+                return;
+            }
+            if (day - lastSeenDay[slot] > MAX_AGE_DAYS) {
+                occurrences[slot] = 0;
+            }
+            occurrences[slot]++;
+            lastSeenDay[slot] = day;
+        }
+
+        private synchronized boolean isRecurring(LocalDateTime time) {
+            final int slot = slotOf(time);
+            final long day = time.toLocalDate().toEpochDay();
+            return occurrences[slot] >= MIN_OCCURRENCES && day - lastSeenDay[slot] <= MAX_AGE_DAYS;
+        }
+
+    }
+
+}
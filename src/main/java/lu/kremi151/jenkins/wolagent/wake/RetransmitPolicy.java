@@ -0,0 +1,67 @@
+/*
+ * Copyright 2019 Michel Kremer (kremi151)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package lu.kremi151.jenkins.wolagent.wake;
+
+/**
+ * Describes how many magic packets are sent when waking a node and how resends are spaced out.
+ */
+public final class RetransmitPolicy {
+
+    public static final int DEFAULT_BURST_COUNT = 1;
+    public static final double DEFAULT_BACKOFF_FACTOR = 2.0;
+    public static final int DEFAULT_MAX_RESENDS = 0;
+
+    public static final RetransmitPolicy SINGLE_PACKET = new RetransmitPolicy(DEFAULT_BURST_COUNT, DEFAULT_BACKOFF_FACTOR, DEFAULT_MAX_RESENDS);
+
+    private final int burstCount;
+    private final double backoffFactor;
+    private final int maxResends;
+
+    public RetransmitPolicy(int burstCount, double backoffFactor, int maxResends) {
+        // Nodes configured before these settings existed are loaded with zeros
+        this.burstCount = burstCount > 0 ? burstCount : DEFAULT_BURST_COUNT;
+        this.backoffFactor = backoffFactor >= 1.0 ? backoffFactor : DEFAULT_BACKOFF_FACTOR;
+        this.maxResends = Math.max(0, maxResends);
+    }
+
+    public int getBurstCount() {
+        return burstCount;
+    }
+
+    public double getBackoffFactor() {
+        return backoffFactor;
+    }
+
+    public int getMaxResends() {
+        return maxResends;
+    }
+
+    /**
+     * @param resend    the index of the resend, starting at 0
+     * @param baseDelay the delay before the first resend in milliseconds
+     * @return the delay between the previous send and the given resend in milliseconds
+     */
+    public long getDelayBeforeResend(int resend, long baseDelay) {
+        return (long) (baseDelay * Math.pow(backoffFactor, resend));
+    }
+
+    @Override
+    public String toString() {
+        return "burst of " + burstCount + ", up to " + maxResends + " resends with backoff factor " + backoffFactor;
+    }
+
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2019 Michel Kremer (kremi151)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package lu.kremi151.jenkins.wolagent.wake;
+
+import lu.kremi151.jenkins.wolagent.Messages;
+
+public enum WakeAddressing {
+
+    /**
+     * Broadcast to the subnet of the node, computed from the netmask of the interface routing to it.
+     */
+    BROADCAST {
+        @Override
+        public String getDisplayName() {
+            return Messages.WakeAddressing_Broadcast();
+        }
+    },
+    /**
+     * Send the packet directly to the known IP address of the node, e.g. for routers with static ARP entries or WOL relays.
+     */
+    UNICAST {
+        @Override
+        public String getDisplayName() {
+            return Messages.WakeAddressing_Unicast();
+        }
+    },
+    /**
+     * Send the packet to the IPv6 link-local all-nodes multicast group on the interface routing to the node.
+     */
+    IPV6_MULTICAST {
+        @Override
+        public String getDisplayName() {
+            return Messages.WakeAddressing_IPv6Multicast();
+        }
+    };
+
+    public static final WakeAddressing DEFAULT = BROADCAST;
+
+    public abstract String getDisplayName();
+
+}
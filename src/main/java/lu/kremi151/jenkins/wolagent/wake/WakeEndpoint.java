@@ -0,0 +1,86 @@
+/*
+ * Copyright 2019 Michel Kremer (kremi151)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package lu.kremi151.jenkins.wolagent.wake;
+
+import hudson.Extension;
+import hudson.model.AbstractDescribableImpl;
+import hudson.model.Descriptor;
+import hudson.util.FormValidation;
+import lu.kremi151.jenkins.wolagent.Messages;
+import lu.kremi151.jenkins.wolagent.util.WakeOnLAN;
+import org.apache.commons.lang.StringUtils;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.QueryParameter;
+
+/**
+ * An additional address and UDP port magic packets of a node are sent to, e.g. a Wake on LAN relay
+ * or a broadcast address with a non-standard port.
+ */
+public class WakeEndpoint extends AbstractDescribableImpl<WakeEndpoint> {
+
+    private final String address;
+    private final int port;
+
+    @DataBoundConstructor
+    public WakeEndpoint(String address, int port) {
+        this.address = StringUtils.trim(address);
+        this.port = WakeOnLAN.effectivePort(port);
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public int getPort() {
+        // Endpoints saved before ports were range checked may still carry an invalid one
+        return WakeOnLAN.effectivePort(port);
+    }
+
+    @Override
+    public String toString() {
+        return address + ":" + getPort();
+    }
+
+    @Extension
+    public static class DescriptorImpl extends Descriptor<WakeEndpoint> {
+
+        @Override
+        public String getDisplayName() {
+            return Messages.WakeEndpoint_DisplayName();
+        }
+
+        public FormValidation doCheckAddress(@QueryParameter String address) {
+            return StringUtils.isBlank(address)
+                    ? FormValidation.error(Messages.WakeEndpoint_AddressRequired())
+                    : FormValidation.ok();
+        }
+
+        public FormValidation doCheckPort(@QueryParameter String port) {
+            try {
+                final int value = Integer.parseInt(StringUtils.trim(port));
+                if (value > 0 && value <= WakeOnLAN.MAX_PORT) {
+                    return FormValidation.ok();
+                }
+            } catch (NumberFormatException e) {
+                // Handled below
+            }
+            return FormValidation.error(Messages.WakeEndpoint_InvalidPort());
+        }
+
+    }
+
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2019 Michel Kremer (kremi151)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package lu.kremi151.jenkins.wolagent.wake;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+/**
+ * Plugin-wide pool sending magic packets, which may block on name resolution or on a relay node for a few seconds.
+ * Continuations which send are moved here, so they neither run on the threads of the reachability poller nor on
+ * whichever thread released a wake permit.
+ */
+public final class WakeExecutor {
+
+    private static final int POOL_SIZE = Integer.getInteger(WakeExecutor.class.getName() + ".poolSize", 4);
+
+    private static volatile ScheduledThreadPoolExecutor instance;
+
+    private WakeExecutor() {
+    }
+
+    @Nonnull
+    public static ScheduledExecutorService get() {
+        ScheduledThreadPoolExecutor executor = instance;
+        if (executor == null) {
+            synchronized (WakeExecutor.class) {
+                executor = instance;
+                if (executor == null) {
+                    executor = new ScheduledThreadPoolExecutor(
+                            Math.max(1, POOL_SIZE),
+                            new NamingThreadFactory(new DaemonThreadFactory(), "WOLAgent.WakeExecutor")
+                    );
+                    executor.setRemoveOnCancelPolicy(true);
+                    instance = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    public static void shutdown() {
+        final ScheduledThreadPoolExecutor executor;
+        synchronized (WakeExecutor.class) {
+            executor = instance;
+            instance = null;
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+}
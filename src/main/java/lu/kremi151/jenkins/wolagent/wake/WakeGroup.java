@@ -0,0 +1,147 @@
+/*
+ * Copyright 2019 Michel Kremer (kremi151)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package lu.kremi151.jenkins.wolagent.wake;
+
+import antlr.ANTLRException;
+import hudson.Extension;
+import hudson.model.AbstractDescribableImpl;
+import hudson.model.Descriptor;
+import hudson.model.Label;
+import hudson.util.FormValidation;
+import lu.kremi151.jenkins.wolagent.Messages;
+import lu.kremi151.jenkins.wolagent.slave.WOLSlave;
+import org.apache.commons.lang.StringUtils;
+import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
+import org.kohsuke.stapler.QueryParameter;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Nodes sharing a constrained resource, such as a power circuit or a storage server, which must not all wake at once.
+ * Nodes join a group by naming it explicitly, by their broadcast IP address or by matching its label expression.
+ */
+public class WakeGroup extends AbstractDescribableImpl<WakeGroup> {
+
+    private final String name;
+    private String broadcastIP;
+    private String labelExpression;
+    private int maxConcurrentWakes;
+    private int minStaggerMillis;
+
+    @DataBoundConstructor
+    public WakeGroup(String name) {
+        this.name = StringUtils.trim(name);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getBroadcastIP() {
+        return broadcastIP;
+    }
+
+    @DataBoundSetter
+    public void setBroadcastIP(String broadcastIP) {
+        this.broadcastIP = StringUtils.trimToNull(broadcastIP);
+    }
+
+    public String getLabelExpression() {
+        return labelExpression;
+    }
+
+    @DataBoundSetter
+    public void setLabelExpression(String labelExpression) {
+        this.labelExpression = StringUtils.trimToNull(labelExpression);
+    }
+
+    /**
+     * @return the maximum number of nodes of this group booting at the same time, {@code 0} for no limit
+     */
+    public int getMaxConcurrentWakes() {
+        return maxConcurrentWakes;
+    }
+
+    @DataBoundSetter
+    public void setMaxConcurrentWakes(int maxConcurrentWakes) {
+        this.maxConcurrentWakes = Math.max(0, maxConcurrentWakes);
+    }
+
+    /**
+     * @return the minimum delay between two wakes of this group in milliseconds
+     */
+    public int getMinStaggerMillis() {
+        return minStaggerMillis;
+    }
+
+    @DataBoundSetter
+    public void setMinStaggerMillis(int minStaggerMillis) {
+        this.minStaggerMillis = Math.max(0, minStaggerMillis);
+    }
+
+    public boolean contains(@Nonnull WOLSlave slave) {
+        if (StringUtils.isNotBlank(slave.getWakeGroup())) {
+            return StringUtils.equals(name, slave.getWakeGroup().trim());
+        }
+        if (broadcastIP != null && broadcastIP.equals(StringUtils.trimToNull(slave.getBroadcastIP()))) {
+            return true;
+        }
+        if (labelExpression != null) {
+            try {
+                return Label.parseExpression(labelExpression).matches(slave);
+            } catch (ANTLRException | IllegalArgumentException e) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    @Extension
+    public static class DescriptorImpl extends Descriptor<WakeGroup> {
+
+        @Override
+        public String getDisplayName() {
+            return Messages.WakeGroup_DisplayName();
+        }
+
+        public FormValidation doCheckName(@QueryParameter String name) {
+            return StringUtils.isBlank(name)
+                    ? FormValidation.error(Messages.WakeGroup_NameRequired())
+                    : FormValidation.ok();
+        }
+
+        public FormValidation doCheckLabelExpression(@QueryParameter String labelExpression) {
+            if (StringUtils.isBlank(labelExpression)) {
+                return FormValidation.ok();
+            }
+            try {
+                Label.parseExpression(labelExpression);
+                return FormValidation.ok();
+            } catch (ANTLRException | IllegalArgumentException e) {
+                return FormValidation.error(e.getMessage());
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2019 Michel Kremer (kremi151)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package lu.kremi151.jenkins.wolagent.wake;
+
+import hudson.Extension;
+import hudson.cli.CLICommand;
+import hudson.model.Label;
+import jenkins.model.Jenkins;
+import lu.kremi151.jenkins.wolagent.Messages;
+import org.kohsuke.args4j.Argument;
+import org.kohsuke.args4j.Option;
+
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+
+@Extension
+public class WakeLabelCommand extends CLICommand {
+
+    @Argument(metaVar = "LABEL", usage = "Label expression of the nodes to wake up", required = true)
+    public String label;
+
+    @Option(name = "-connect", usage = "Launch the agents once their nodes are reachable")
+    public boolean connect;
+
+    @Override
+    public String getShortDescription() {
+        return Messages.WakeLabelCommand_ShortDescription();
+    }
+
+    @Override
+    protected int run() throws Exception {
+        Jenkins.get().checkPermission(Jenkins.ADMINISTER);
+        final Label parsed = Label.parseExpression(label);
+        final PrintWriter out = new PrintWriter(new OutputStreamWriter(stdout, StandardCharsets.UTF_8), true);
+        final int failures = FleetWaker.await(FleetWaker.wake(parsed, connect, out), out);
+        return failures == 0 ? 0 : 1;
+    }
+
+}
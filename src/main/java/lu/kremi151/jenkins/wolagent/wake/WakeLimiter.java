@@ -0,0 +1,243 @@
+/*
+ * Copyright 2019 Michel Kremer (kremi151)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package lu.kremi151.jenkins.wolagent.wake;
+
+import hudson.model.Queue;
+import jenkins.model.Jenkins;
+import lu.kremi151.jenkins.wolagent.WOLGlobalConfiguration;
+import lu.kremi151.jenkins.wolagent.reachability.ReachabilityPoller;
+import lu.kremi151.jenkins.wolagent.slave.WOLSlave;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Enforces the concurrency limit and stagger of {@link WakeGroup}s. Permits are handed out asynchronously on the
+ * {@link WakeExecutor}, so waiting nodes do not hold any thread. Nodes with queued work come first, others are served in arrival order.
+ */
+public final class WakeLimiter {
+
+    private static final Logger LOGGER = java.util.logging.Logger.getLogger(WakeLimiter.class.getName());
+
+    private static final WakeLimiter INSTANCE = new WakeLimiter();
+
+    /**
+     * Handed out to nodes which are not part of any limited group.
+     */
+    private static final Permit UNLIMITED = new Permit(null);
+
+    private final Map<String, GroupState> groups = new ConcurrentHashMap<>();
+
+    private WakeLimiter() {
+    }
+
+    @Nonnull
+    public static WakeLimiter get() {
+        return INSTANCE;
+    }
+
+    @CheckForNull
+    public static WakeGroup findGroup(@Nonnull WOLSlave slave) {
+        for (WakeGroup group : WOLGlobalConfiguration.get().getWakeGroups()) {
+            if (group.contains(slave)) {
+                return group;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return a future completing with a permit once the node may be woken up, the permit has to be released
+     * once the node finished booting. Cancelling the future gives up waiting.
+     */
+    @Nonnull
+    public CompletableFuture<Permit> acquire(@CheckForNull WOLSlave slave) {
+        final WakeGroup group = slave == null ? null : findGroup(slave);
+        if (group == null || (group.getMaxConcurrentWakes() <= 0 && group.getMinStaggerMillis() <= 0)) {
+            return CompletableFuture.completedFuture(UNLIMITED);
+        }
+        final GroupState state = groups.computeIfAbsent(group.getName(), GroupState::new);
+        return state.acquire(group, hasQueuedWork(slave));
+    }
+
+    private static boolean hasQueuedWork(WOLSlave slave) {
+        for (Queue.BuildableItem item : Jenkins.get().getQueue().getBuildableItems()) {
+            if (slave.canTake(item) == null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static final class Permit {
+
+        @CheckForNull
+        private final GroupState group;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(@CheckForNull GroupState group) {
+            this.group = group;
+        }
+
+        /**
+         * @return the name of the group this permit was taken from, or {@code null} if the node is not limited
+         */
+        @CheckForNull
+        public String getGroupName() {
+            return group == null ? null : group.name;
+        }
+
+        public void release() {
+            if (group != null && released.compareAndSet(false, true)) {
+                group.release();
+            }
+        }
+
+    }
+
+    private static final class Waiter implements Comparable<Waiter> {
+
+        private final CompletableFuture<Permit> future = new CompletableFuture<>();
+        private final boolean priority;
+        private final long sequence;
+
+        private Waiter(boolean priority, long sequence) {
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Waiter other) {
+            if (priority != other.priority) {
+                return priority ? -1 : 1;
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+
+    }
+
+    private static final class GroupState {
+
+        private final String name;
+        private final PriorityQueue<Waiter> waiters = new PriorityQueue<>();
+        private final AtomicLong sequence = new AtomicLong();
+
+        private int maxConcurrent;
+        private long staggerNanos;
+
+        private int active;
+        private boolean granted;
+        private long lastGrantNanos;
+        private boolean grantScheduled;
+
+        private GroupState(String name) {
+            this.name = name;
+        }
+
+        private CompletableFuture<Permit> acquire(WakeGroup group, boolean priority) {
+            final Waiter waiter = new Waiter(priority, sequence.incrementAndGet());
+            synchronized (this) {
+                // Limits are taken from the latest configuration, so changes apply to waiting nodes as well
+                maxConcurrent = group.getMaxConcurrentWakes();
+                staggerNanos = TimeUnit.MILLISECONDS.toNanos(group.getMinStaggerMillis());
+                waiters.add(waiter);
+            }
+            waiter.future.whenComplete((permit, t) -> {
+                if (waiter.future.isCancelled()) {
+                    synchronized (this) {
+                        waiters.remove(waiter);
+                    }
+                }
+            });
+            grant();
+            return waiter.future;
+        }
+
+        private void release() {
+            synchronized (this) {
+                active--;
+            }
+            grant();
+        }
+
+        private void grant() {
+            while (true) {
+                final Waiter next;
+                synchronized (this) {
+                    if (waiters.isEmpty() || grantScheduled || (maxConcurrent > 0 && active >= maxConcurrent)) {
+                        return;
+                    }
+                    final long wait = granted ? lastGrantNanos + staggerNanos - System.nanoTime() : 0L;
+                    if (wait > 0L) {
+                        scheduleGrant(wait);
+                        return;
+                    }
+                    next = waiters.poll();
+                    if (next.future.isDone()) {
+                        continue;
+                    }
+                    active++;
+                    granted = true;
+                    lastGrantNanos = System.nanoTime();
+                }
+                // Callers continue with the wake right away, which must neither run under the lock nor on the thread
+                // releasing the previous permit, usually the one of a reachability check
+                try {
+                    WakeExecutor.get().execute(() -> complete(next));
+                } catch (RejectedExecutionException e) {
+                    complete(next);
+                }
+            }
+        }
+
+        private void complete(Waiter waiter) {
+            if (!waiter.future.complete(new Permit(this))) {
+                synchronized (this) {
+                    active--;
+                }
+                grant();
+            }
+        }
+
+        private void scheduleGrant(long delayNanos) {
+            grantScheduled = true;
+            try {
+                ReachabilityPoller.get().getExecutor().schedule(() -> {
+                    synchronized (this) {
+                        grantScheduled = false;
+                    }
+                    grant();
+                }, delayNanos, TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                LOGGER.log(Level.WARNING, "Unable to schedule the next wake of group " + name, e);
+                grantScheduled = false;
+            }
+        }
+
+    }
+
+}
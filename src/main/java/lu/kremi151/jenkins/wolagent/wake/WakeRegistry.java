@@ -0,0 +1,178 @@
+/*
+ * Copyright 2019 Michel Kremer (kremi151)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package lu.kremi151.jenkins.wolagent.wake;
+
+import hudson.model.TaskListener;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Wakes in flight, by node name. Concurrent wake requests for the same node join the pending wake instead of
+ * sending more packets and starting another poll loop, whichever launcher instance they come from.
+ */
+public final class WakeRegistry {
+
+    private static final WakeRegistry INSTANCE = new WakeRegistry();
+
+    private final ConcurrentMap<String, PendingWake> pending = new ConcurrentHashMap<>();
+
+    /**
+     * Nodes whose last wake failed, until one of their wakes succeeds.
+     */
+    private final Set<String> failed = ConcurrentHashMap.newKeySet();
+
+    private WakeRegistry() {
+    }
+
+    @Nonnull
+    public static WakeRegistry get() {
+        return INSTANCE;
+    }
+
+    public interface WakeStarter {
+
+        @Nonnull
+        CompletableFuture<Void> start() throws IOException;
+
+    }
+
+    /**
+     * Joins the pending wake of the given node, or starts a new one if there is none.
+     * Each caller gets its own future: cancelling it stops waiting, and the wake itself is only cancelled
+     * once all callers waiting for it gave up.
+     */
+    @Nonnull
+    public CompletableFuture<Void> joinOrStart(@Nonnull String nodeName, @Nonnull TaskListener listener, @Nonnull WakeStarter starter) throws IOException {
+        final PendingWake created = new PendingWake();
+        while (true) {
+            final PendingWake existing = pending.putIfAbsent(nodeName, created);
+            if (existing == null) {
+                break;
+            }
+            final CompletableFuture<Void> joined = existing.join();
+            if (joined != null) {
+                listener.getLogger().println("Node is already waking up, joining the pending wake");
+                return joined;
+            }
+            // The pending wake completed or got cancelled meanwhile
+            pending.remove(nodeName, existing);
+        }
+
+        final CompletableFuture<Void> view = created.join();
+        final CompletableFuture<Void> wake;
+        try {
+            wake = starter.start();
+        } catch (IOException | RuntimeException e) {
+            pending.remove(nodeName, created);
+            created.source.completeExceptionally(e);
+            throw e;
+        }
+        created.source.whenComplete((v, t) -> {
+            pending.remove(nodeName, created);
+            if (created.source.isCancelled()) {
+                wake.cancel(true);
+            } else if (t == null) {
+                failed.remove(nodeName);
+            } else {
+                failed.add(nodeName);
+            }
+        });
+        wake.whenComplete((v, t) -> {
+            if (t == null) {
+                created.source.complete(null);
+            } else {
+                created.source.completeExceptionally(t instanceof CompletionException && t.getCause() != null ? t.getCause() : t);
+            }
+        });
+        return view;
+    }
+
+    /**
+     * @return whether a wake of the given node is in flight
+     */
+    public boolean isWaking(@Nonnull String nodeName) {
+        final PendingWake wake = pending.get(nodeName);
+        return wake != null && !wake.source.isDone();
+    }
+
+    /**
+     * @return the age of the wake of the given node in milliseconds, or {@code -1} if none is in flight
+     */
+    public long getWakeAge(@Nonnull String nodeName) {
+        final PendingWake wake = pending.get(nodeName);
+        return wake == null || wake.source.isDone() ? -1L : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - wake.startNanos);
+    }
+
+    /**
+     * @return whether the last completed wake of the given node failed
+     */
+    public boolean hasLastWakeFailed(@Nonnull String nodeName) {
+        return failed.contains(nodeName);
+    }
+
+    public void remove(@Nonnull String nodeName) {
+        failed.remove(nodeName);
+    }
+
+    private static final class PendingWake {
+
+        private final CompletableFuture<Void> source = new CompletableFuture<>();
+        private final long startNanos = System.nanoTime();
+        private final AtomicInteger waiting = new AtomicInteger();
+
+        /**
+         * @return a new view of this wake, or {@code null} if it is already over
+         */
+        @CheckForNull
+        private CompletableFuture<Void> join() {
+            int count;
+            do {
+                count = waiting.get();
+                if (source.isDone() || count < 0) {
+                    return null;
+                }
+            } while (!waiting.compareAndSet(count, count + 1));
+
+            final CompletableFuture<Void> view = new CompletableFuture<>();
+            source.whenComplete((v, t) -> {
+                if (t == null) {
+                    view.complete(null);
+                } else {
+                    view.completeExceptionally(t);
+                }
+            });
+            view.whenComplete((v, t) -> {
+                // Once nobody waits anymore, the count is locked at -1 so no one joins a wake about to be cancelled
+                if (view.isCancelled() && waiting.decrementAndGet() == 0 && waiting.compareAndSet(0, -1)) {
+                    source.cancel(true);
+                }
+            });
+            return view;
+        }
+
+    }
+
+}
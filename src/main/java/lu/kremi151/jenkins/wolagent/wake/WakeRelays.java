@@ -0,0 +1,199 @@
+/*
+ * Copyright 2019 Michel Kremer (kremi151)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package lu.kremi151.jenkins.wolagent.wake;
+
+import hudson.Extension;
+import hudson.model.Computer;
+import hudson.model.Node;
+import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
+import hudson.slaves.ComputerListener;
+import hudson.slaves.OfflineCause;
+import jenkins.model.Jenkins;
+import lu.kremi151.jenkins.wolagent.remoting.callables.ListSubnets;
+import lu.kremi151.jenkins.wolagent.slave.WOLSlave;
+import lu.kremi151.jenkins.wolagent.util.HostHelper;
+import lu.kremi151.jenkins.wolagent.util.Subnet;
+import org.apache.commons.lang.StringUtils;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InterfaceAddress;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Picks the agent relaying the magic packets of a node, since routers usually do not forward directed broadcasts.
+ * The subnets of online agents are fetched when they come online and cached. Selecting a relay never calls an agent,
+ * it only reads the cache and refreshes outdated entries in the background.
+ */
+public final class WakeRelays {
+
+    private static final Logger LOGGER = java.util.logging.Logger.getLogger(WakeRelays.class.getName());
+
+    private static final long SUBNETS_TTL_NANOS = TimeUnit.MINUTES.toNanos(30);
+
+    private static final Map<String, AgentSubnets> SUBNETS = new ConcurrentHashMap<>();
+    private static final Set<String> REFRESHING = ConcurrentHashMap.newKeySet();
+
+    private WakeRelays() {
+    }
+
+    /**
+     * @param nodeAddress the address of the node to wake, if known
+     * @return the sender of the magic packets for the given node, relaying through the configured relay if it is online,
+     * else through an online agent attached to the subnet of the node if the controller is not, else the controller
+     */
+    @Nonnull
+    public static PacketSender select(@Nonnull WOLSlave slave, @CheckForNull InetAddress nodeAddress, int localPort) {
+        final String hostAddress = nodeAddress == null ? null : nodeAddress.getHostAddress();
+        final String relayName = StringUtils.trimToNull(slave.getWakeRelay());
+        if (relayName != null) {
+            final Computer relay = getOnlineComputer(relayName);
+            if (relay == null) {
+                LOGGER.log(Level.INFO, "Relay {0} of node {1} is offline, sending magic packet from the controller", new Object[]{relayName, slave.getNodeName()});
+                return PacketSender.CONTROLLER;
+            }
+            return PacketSender.relay(relay, hostAddress, localPort);
+        }
+        if (nodeAddress == null || !slave.isAutoSelectRelay()) {
+            return PacketSender.CONTROLLER;
+        }
+        final InterfaceAddress route = HostHelper.findRouteInterfaceAddress(nodeAddress);
+        if (route != null && HostHelper.isInSubnet(nodeAddress, route)) {
+            return PacketSender.CONTROLLER;
+        }
+        for (Computer computer : Jenkins.get().getComputers()) {
+            if (computer == Jenkins.get().toComputer() || computer.getName().equals(slave.getNodeName()) || computer.getChannel() == null) {
+                continue;
+            }
+            for (Subnet subnet : getSubnets(computer)) {
+                if (subnet.contains(nodeAddress)) {
+                    return PacketSender.relay(computer, hostAddress, localPort);
+                }
+            }
+        }
+        return PacketSender.CONTROLLER;
+    }
+
+    @CheckForNull
+    private static Computer getOnlineComputer(String name) {
+        final Node node = Jenkins.get().getNode(name);
+        final Computer computer = node == null ? null : node.toComputer();
+        return computer == null || computer.getChannel() == null ? null : computer;
+    }
+
+    /**
+     * @return the cached subnets of the given agent, possibly outdated, or none if they were not fetched yet
+     */
+    @Nonnull
+    private static List<Subnet> getSubnets(Computer computer) {
+        final AgentSubnets cached = SUBNETS.get(computer.getName());
+        if (cached == null || System.nanoTime() - cached.fetchedAt >= SUBNETS_TTL_NANOS) {
+            refreshSubnets(computer);
+        }
+        return cached == null ? Collections.emptyList() : cached.subnets;
+    }
+
+    private static void refreshSubnets(Computer computer) {
+        final String name = computer.getName();
+        if (!REFRESHING.add(name)) {
+            return;
+        }
+        try {
+            Computer.threadPoolForRemoting.submit(() -> {
+                try {
+                    fetchSubnets(computer);
+                } finally {
+                    REFRESHING.remove(name);
+                }
+            });
+        } catch (RuntimeException e) {
+            REFRESHING.remove(name);
+            LOGGER.log(Level.FINE, "Unable to schedule fetching the subnets of " + name, e);
+        }
+    }
+
+    @Nonnull
+    private static List<Subnet> fetchSubnets(Computer computer) {
+        final VirtualChannel channel = computer.getChannel();
+        if (channel == null) {
+            return Collections.emptyList();
+        }
+        List<Subnet> subnets;
+        try {
+            subnets = channel.call(new ListSubnets());
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Unable to list subnets of " + computer.getName(), e);
+            subnets = Collections.emptyList();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Collections.emptyList();
+        }
+        // Failures are cached as well, so an agent unable to answer is not asked again on every wake
+        SUBNETS.put(computer.getName(), new AgentSubnets(subnets));
+        return subnets;
+    }
+
+    private static final class AgentSubnets {
+
+        private final List<Subnet> subnets;
+        private final long fetchedAt = System.nanoTime();
+
+        private AgentSubnets(List<Subnet> subnets) {
+            this.subnets = Collections.unmodifiableList(subnets);
+        }
+
+    }
+
+    private static boolean isAutoSelectionUsed() {
+        for (Node node : Jenkins.get().getNodes()) {
+            if (node instanceof WOLSlave && ((WOLSlave) node).isAutoSelectRelay() && StringUtils.isBlank(((WOLSlave) node).getWakeRelay())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Extension
+    public static class SubnetComputerListener extends ComputerListener {
+
+        @Override
+        public void onOnline(Computer c, TaskListener listener) {
+            if (c == Jenkins.get().toComputer() || !isAutoSelectionUsed()) {
+                return;
+            }
+            // Fetched asynchronously, onOnline must not block on the channel
+            refreshSubnets(c);
+        }
+
+        @Override
+        public void onOffline(@Nonnull Computer c, @CheckForNull OfflineCause cause) {
+            SUBNETS.remove(c.getName());
+        }
+
+    }
+
+}
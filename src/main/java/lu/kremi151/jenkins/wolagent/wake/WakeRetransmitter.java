@@ -0,0 +1,115 @@
+/*
+ * Copyright 2019 Michel Kremer (kremi151)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package lu.kremi151.jenkins.wolagent.wake;
+
+import lu.kremi151.jenkins.wolagent.util.WakeOnLAN.WakeTarget;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps re-sending the magic packet of a waking node to all of its endpoints according to a {@link RetransmitPolicy}
+ * until a given future, usually the pending reachability check, completes.
+ */
+public final class WakeRetransmitter implements Runnable {
+
+    private static final Logger LOGGER = java.util.logging.Logger.getLogger(WakeRetransmitter.class.getName());
+
+    private final ScheduledExecutorService executor;
+    private final PacketSender sender;
+    private final List<WakeTarget> targets;
+    private final RetransmitPolicy policy;
+    private final long baseDelay;
+    private final CompletableFuture<?> until;
+
+    private int resends = 0;
+    private volatile ScheduledFuture<?> pending;
+
+    private WakeRetransmitter(ScheduledExecutorService executor, PacketSender sender, List<WakeTarget> targets, RetransmitPolicy policy, long baseDelay, CompletableFuture<?> until) {
+        this.executor = executor;
+        this.sender = sender;
+        this.targets = new ArrayList<>(targets);
+        this.policy = policy;
+        this.baseDelay = baseDelay;
+        this.until = until;
+    }
+
+    /**
+     * Sends the initial burst of magic packets to all targets on the calling thread.
+     * Failing targets are skipped, the burst only fails if no packet could be sent at all.
+     */
+    public static void sendBurst(@Nonnull PacketSender sender, @Nonnull List<WakeTarget> targets, RetransmitPolicy policy) throws IOException {
+        sender.send(targets, policy.getBurstCount());
+    }
+
+    /**
+     * Schedules the resends of the given policy, stopping as soon as {@code until} completes.
+     * Sending may block, e.g. on a relay node, so the executor should not be shared with the reachability checks.
+     */
+    public static void scheduleResends(ScheduledExecutorService executor, PacketSender sender, List<WakeTarget> targets, RetransmitPolicy policy, long baseDelay, CompletableFuture<?> until) {
+        if (policy.getMaxResends() <= 0 || targets.isEmpty() || until.isDone()) {
+            return;
+        }
+        final WakeRetransmitter retransmitter = new WakeRetransmitter(executor, sender, targets, policy, baseDelay, until);
+        until.whenComplete((v, t) -> retransmitter.cancel());
+        retransmitter.scheduleNext();
+    }
+
+    @Override
+    public void run() {
+        if (until.isDone()) {
+            return;
+        }
+        try {
+            sender.send(targets, 1);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Unable to resend magic packets to " + targets, e);
+        }
+        resends++;
+        if (resends < policy.getMaxResends()) {
+            scheduleNext();
+        }
+    }
+
+    private void scheduleNext() {
+        if (until.isDone()) {
+            return;
+        }
+        try {
+            pending = executor.schedule(this, policy.getDelayBeforeResend(resends, baseDelay), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            LOGGER.log(Level.FINE, "Unable to schedule resend of magic packets to " + targets, e);
+        }
+    }
+
+    private void cancel() {
+        final ScheduledFuture<?> pending = this.pending;
+        if (pending != null) {
+            pending.cancel(false);
+        }
+    }
+
+}
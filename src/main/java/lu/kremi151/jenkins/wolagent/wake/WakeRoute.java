@@ -0,0 +1,85 @@
+/*
+ * Copyright 2019 Michel Kremer (kremi151)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package lu.kremi151.jenkins.wolagent.wake;
+
+import lu.kremi151.jenkins.wolagent.util.HostHelper;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InterfaceAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.net.UnknownHostException;
+
+/**
+ * The destination magic packets for a given node address are sent to.
+ * Computing a route involves a route lookup and enumerating interfaces, so routes are cached per node.
+ */
+public final class WakeRoute {
+
+    private static final byte[] IPV6_ALL_NODES = {(byte) 0xff, 0x02, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0x01};
+
+    private final InetAddress target;
+    private final WakeAddressing addressing;
+    private final String destination;
+
+    private WakeRoute(InetAddress target, WakeAddressing addressing, String destination) {
+        this.target = target;
+        this.addressing = addressing;
+        this.destination = destination;
+    }
+
+    /**
+     * @return the route to the given node address, or {@code null} if none could be determined
+     */
+    @CheckForNull
+    public static WakeRoute compute(@Nonnull InetAddress target, @Nonnull WakeAddressing addressing) throws UnknownHostException, SocketException {
+        switch (addressing) {
+            case UNICAST:
+                return new WakeRoute(target, addressing, target.getHostAddress());
+            case IPV6_MULTICAST:
+                final InterfaceAddress interfaceAddress = HostHelper.findRouteInterfaceAddress(target);
+                final NetworkInterface networkInterface = interfaceAddress == null
+                        ? null
+                        : NetworkInterface.getByInetAddress(interfaceAddress.getAddress());
+                if (networkInterface == null) {
+                    return null;
+                }
+                return new WakeRoute(target, addressing, Inet6Address.getByAddress(null, IPV6_ALL_NODES, networkInterface).getHostAddress());
+            case BROADCAST:
+            default:
+                final String broadcast = HostHelper.tryGuessBroadcastIp(target.getHostAddress());
+                return broadcast == null ? null : new WakeRoute(target, addressing, broadcast);
+        }
+    }
+
+    public boolean isFor(InetAddress target, WakeAddressing addressing) {
+        return this.target.equals(target) && this.addressing == addressing;
+    }
+
+    public String getDestination() {
+        return destination;
+    }
+
+    @Override
+    public String toString() {
+        return addressing + " to " + destination;
+    }
+
+}
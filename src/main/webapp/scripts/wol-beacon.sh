@@ -0,0 +1,90 @@
+#!/bin/bash
+#
+# Copyright 2019 Michel Kremer (kremi151)
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#     http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+
+# Announces to the Jenkins controller that this machine finished booting, so the agent is launched right away
+# instead of after the next reachability probe.
+#
+# Usage: wol-beacon.sh <controller host> <beacon port> <node name> <mac address> <secret file>
+#
+# The secret file contains the beacon secret configured on the controller, keep it readable by root only.
+# The beacon is signed with it using HMAC-SHA256, which requires openssl and od. Run this script once the service the agent
+# is launched through (e.g. sshd) is up, for instance from a systemd unit:
+#
+#   [Unit]
+#   After=network-online.target ssh.service
+#   Wants=network-online.target
+#
+#   [Service]
+#   Type=oneshot
+#   ExecStart=/usr/local/bin/wol-beacon.sh jenkins.example.com 9999 build-agent-1 52:54:00:12:34:56 /etc/wol-beacon.secret
+#
+#   [Install]
+#   WantedBy=multi-user.target
+#
+# Add suspend.target and hibernate.target to WantedBy and After to announce resumes as well.
+
+set -eu
+
+if [ "$#" -lt 5 ]; then
+    echo "Usage: $0 <controller host> <beacon port> <node name> <mac address> <secret file>" >&2
+    exit 2
+fi
+
+CONTROLLER="$1"
+PORT="$2"
+NODE_NAME="$3"
+MAC_ADDRESS="$4"
+SECRET_FILE="$5"
+
+TIMESTAMP="$(date +%s)"
+CONTENT="WOLAGENT1 ${MAC_ADDRESS} ${TIMESTAMP} ${NODE_NAME}"
+SECRET="$(tr -d '\r\n' < "${SECRET_FILE}")"
+if [ -z "${SECRET}" ]; then
+    echo "Secret file ${SECRET_FILE} is empty" >&2
+    exit 2
+fi
+
+# HMAC-SHA256 is assembled from plain SHA-256 digests, as passing the secret to openssl as an argument would
+# expose it in the process list. The secret only goes through shell builtins and pipes.
+hex_bytes() {
+    od -An -v -tx1 | tr -d ' \n'
+}
+
+# Prints the printf escapes of the 64 byte block size padded key, each byte XORed with the given value
+padded_key() {
+    local i byte escaped=""
+    for ((i = 0; i < 128; i += 2)); do
+        byte="${KEY_HEX:i:2}"
+        printf -v byte '\\x%02x' "$((16#${byte:-00} ^ $1))"
+        escaped+="${byte}"
+    done
+    printf '%s' "${escaped}"
+}
+
+KEY_HEX="$(printf '%s' "${SECRET}" | hex_bytes)"
+if [ "${#KEY_HEX}" -gt 128 ]; then
+    KEY_HEX="$(printf '%s' "${SECRET}" | openssl dgst -sha256 -binary | hex_bytes)"
+fi
+INNER_HEX="$({ printf "$(padded_key 0x36)"; printf '%s' "${CONTENT}"; } | openssl dgst -sha256 -binary | hex_bytes)"
+SIGNATURE="$({ printf "$(padded_key 0x5c)"; printf "$(printf '%s' "${INNER_HEX}" | sed 's/../\\x&/g')"; } \
+    | openssl dgst -sha256 -binary | hex_bytes)"
+
+# UDP may drop a datagram, the controller only counts the first copy
+for i in 1 2 3; do
+    printf '%s' "WOLAGENT1 ${MAC_ADDRESS} ${TIMESTAMP} ${SIGNATURE} ${NODE_NAME}" > "/dev/udp/${CONTROLLER}/${PORT}" || true
+    sleep 1
+done
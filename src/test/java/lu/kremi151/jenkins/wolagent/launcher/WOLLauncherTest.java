@@ -0,0 +1,310 @@
+/*
+ * Copyright 2019 Michel Kremer (kremi151)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package lu.kremi151.jenkins.wolagent.launcher;
+
+import hudson.model.Computer;
+import hudson.model.Descriptor;
+import hudson.model.TaskListener;
+import hudson.slaves.ComputerLauncher;
+import hudson.slaves.SlaveComputer;
+import lu.kremi151.jenkins.wolagent.host.HostExtractor;
+import lu.kremi151.jenkins.wolagent.reachability.ReadinessProbe;
+import lu.kremi151.jenkins.wolagent.simulator.SleepingHostSimulator;
+import lu.kremi151.jenkins.wolagent.simulator.SleepingHostSimulator.SimulatedHost;
+import lu.kremi151.jenkins.wolagent.slave.WOLSlave;
+import lu.kremi151.jenkins.wolagent.wake.WakeRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.TestExtension;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Launches nodes whose machines are simulated by a {@link SleepingHostSimulator} through the {@link WOLLauncher},
+ * covering the wake registry, the wake limiter, the readiness probe and the connection timeout.
+ * The number of nodes of the load test is set through the {@code loadNodes} system property of this class.
+ */
+public class WOLLauncherTest {
+
+    private static final long BOOT_DELAY = 500L;
+
+    /**
+     * Number of nodes launched at once by {@link #launchesManyNodesWithBoundedThreads()}.
+     */
+    private static final int LOAD_NODES = Integer.getInteger(WOLLauncherTest.class.getName() + ".loadNodes", 200);
+
+    private static final long LOAD_BOOT_DELAY = 3000L;
+
+    /**
+     * Threads the plugin may start while the nodes of the load test boot, on top of those running before, whatever
+     * the number of nodes.
+     */
+    private static final int THREAD_BUDGET = Integer.getInteger(WOLLauncherTest.class.getName() + ".threadBudget", 64);
+
+    @Rule
+    public JenkinsRule j = new JenkinsRule();
+
+    private SleepingHostSimulator simulator;
+
+    @Before
+    public void setUp() throws IOException {
+        simulator = new SleepingHostSimulator(BOOT_DELAY);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        simulator.close();
+    }
+
+    @Test
+    public void wakesNodeBeforeLaunchingAgent() throws Exception {
+        final SimulatedHost host = simulator.addHost("02:00:00:00:00:01", true);
+        final WOLSlave slave = createSlave("sleeping", host, 10000);
+
+        j.waitOnline(slave);
+
+        assertTrue(host.isAwake());
+        assertTrue(simulator.getValidPackets() > 0);
+        assertEquals(0L, simulator.getInvalidPackets());
+        assertFalse(WakeRegistry.get().hasLastWakeFailed(slave.getNodeName()));
+    }
+
+    @Test
+    public void wakesNodesConcurrently() throws Exception {
+        final List<WOLSlave> slaves = new ArrayList<>();
+        final List<SimulatedHost> hosts = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            final SimulatedHost host = simulator.addHost(String.format(Locale.ROOT, "02:00:00:00:01:%02x", i), true);
+            hosts.add(host);
+            slaves.add(createSlave("sleeping-" + i, host, 10000));
+        }
+        for (WOLSlave slave : slaves) {
+            slave.toComputer().connect(false);
+        }
+        for (WOLSlave slave : slaves) {
+            j.waitOnline(slave);
+        }
+        for (SimulatedHost host : hosts) {
+            assertTrue(host.isAwake());
+        }
+    }
+
+    @Test
+    public void giveUpOnNodeWhichNeverBoots() throws Exception {
+        final SimulatedHost host = simulator.addHost("02:00:00:00:02:01", false);
+        final WOLSlave slave = createSlave("broken", host, 2000);
+        final Computer computer = slave.toComputer();
+
+        try {
+            computer.connect(false).get();
+        } catch (ExecutionException e) {
+            // The launch fails once the connection timeout elapsed
+        }
+
+        assertTrue(computer.isOffline());
+        assertFalse(host.isAwake());
+        assertTrue(simulator.getValidPackets() > 0);
+        assertTrue(WakeRegistry.get().hasLastWakeFailed(slave.getNodeName()));
+    }
+
+    /**
+     * Launches many nodes at once, every tenth of which never boots. Agents are not started, the delegate launcher
+     * only records when it got called, so the test measures the plugin rather than the agent JVMs.
+     * Threads are counted until the first node boots, as each delegate launch takes a thread of its own afterwards.
+     */
+    @Test
+    public void launchesManyNodesWithBoundedThreads() throws Exception {
+        simulator.close();
+        simulator = new SleepingHostSimulator(LOAD_BOOT_DELAY);
+        final List<WOLSlave> slaves = new ArrayList<>();
+        final List<RecordingLauncher> launchers = new ArrayList<>();
+        final List<SimulatedHost> hosts = new ArrayList<>();
+        for (int i = 0; i < LOAD_NODES; i++) {
+            final boolean bootable = i % 10 != 9;
+            final SimulatedHost host = simulator.addHost(String.format(Locale.ROOT, "02:00:00:01:%02x:%02x", i >> 8, i & 0xff), bootable);
+            final RecordingLauncher launcher = new RecordingLauncher(simulator.getAddress().getHostAddress(), host.getPort());
+            hosts.add(host);
+            launchers.add(launcher);
+            slaves.add(createSlave("load-" + i, host, 10000, launcher));
+        }
+
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        final int baseline = threads.getThreadCount();
+        threads.resetPeakThreadCount();
+        final long start = System.nanoTime();
+        final List<Future<?>> connects = new ArrayList<>();
+        for (WOLSlave slave : slaves) {
+            connects.add(slave.toComputer().connect(false));
+        }
+        Thread.sleep(Math.max(0L, LOAD_BOOT_DELAY - 500L - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+        final int peakWhileBooting = threads.getPeakThreadCount();
+        for (Future<?> connect : connects) {
+            try {
+                connect.get();
+            } catch (ExecutionException e) {
+                // Recording launchers never open a channel, and broken nodes time out
+            }
+        }
+        final int peak = threads.getPeakThreadCount();
+
+        final List<Long> latencies = new ArrayList<>();
+        for (int i = 0; i < LOAD_NODES; i++) {
+            final String name = slaves.get(i).getNodeName();
+            final long launched = launchers.get(i).getLaunchNanos();
+            if (i % 10 == 9) {
+                assertEquals("Node " + name + " never boots", -1L, launched);
+                assertTrue(WakeRegistry.get().hasLastWakeFailed(name));
+            } else {
+                assertTrue("Node " + name + " was not launched", launched >= 0L);
+                assertTrue(hosts.get(i).isAwake());
+                latencies.add(TimeUnit.NANOSECONDS.toMillis(launched - start));
+            }
+        }
+        Collections.sort(latencies);
+        System.out.println(String.format(Locale.ROOT,
+                "Launched %d nodes, wake to launch latency p50 %d ms, p90 %d ms, p99 %d ms, max %d ms, "
+                        + "%d threads before, %d while booting, %d at peak",
+                LOAD_NODES, percentile(latencies, 50), percentile(latencies, 90), percentile(latencies, 99),
+                latencies.get(latencies.size() - 1), baseline, peakWhileBooting, peak));
+        assertTrue("Waiting for " + LOAD_NODES + " nodes took " + (peakWhileBooting - baseline) + " threads",
+                peakWhileBooting - baseline <= THREAD_BUDGET);
+    }
+
+    private static long percentile(List<Long> sorted, int percentile) {
+        return sorted.get(Math.max(0, (int) Math.ceil(sorted.size() * percentile / 100.0) - 1));
+    }
+
+    private WOLSlave createSlave(String name, SimulatedHost host, int connectionTimeout) throws Exception {
+        return createSlave(name, host, connectionTimeout, new SimulatedLauncher(
+                j.createComputerLauncher(null),
+                simulator.getAddress().getHostAddress(),
+                host.getPort()
+        ));
+    }
+
+    private WOLSlave createSlave(String name, SimulatedHost host, int connectionTimeout, SimulatedLauncher launcher) throws Exception {
+        final WOLSlave slave = new WOLSlave(
+                name,
+                j.createTmpDir().getPath(),
+                launcher,
+                host.getMacAddress(),
+                simulator.getAddress().getHostAddress(),
+                100,
+                connectionTimeout,
+                null
+        );
+        slave.setWakePort(simulator.getWakeAddress().getPort());
+        slave.setReadinessProbe(ReadinessProbe.TCP);
+        j.jenkins.addNode(slave);
+        return slave;
+    }
+
+    /**
+     * Launches the agent locally, while pretending to connect to the simulated host.
+     */
+    public static class SimulatedLauncher extends ComputerLauncher {
+
+        private final ComputerLauncher agent;
+        private final String host;
+        private final int port;
+
+        public SimulatedLauncher(ComputerLauncher agent, String host, int port) {
+            this.agent = agent;
+            this.host = host;
+            this.port = port;
+        }
+
+        @Override
+        public void launch(SlaveComputer computer, TaskListener listener) throws IOException, InterruptedException {
+            agent.launch(computer, listener);
+        }
+
+        @TestExtension
+        public static class DescriptorImpl extends Descriptor<ComputerLauncher> {
+        }
+
+    }
+
+    /**
+     * Only records when the node was launched, without starting any agent.
+     */
+    public static class RecordingLauncher extends SimulatedLauncher {
+
+        private volatile long launchNanos = -1L;
+
+        public RecordingLauncher(String host, int port) {
+            super(null, host, port);
+        }
+
+        @Override
+        public void launch(SlaveComputer computer, TaskListener listener) {
+            launchNanos = System.nanoTime();
+        }
+
+        /**
+         * @return when the launcher got called, in {@link System#nanoTime()} units, or {@code -1} if it never was
+         */
+        public long getLaunchNanos() {
+            return launchNanos;
+        }
+
+        @TestExtension
+        public static class DescriptorImpl extends Descriptor<ComputerLauncher> {
+        }
+
+    }
+
+    @TestExtension
+    public static class SimulatedHostExtractor extends HostExtractor {
+
+        @Override
+        public boolean isApplicable(@Nonnull Class<? extends ComputerLauncher> launcherClass) {
+            return SimulatedLauncher.class.isAssignableFrom(launcherClass);
+        }
+
+        @CheckForNull
+        @Override
+        public String getHost(@Nonnull ComputerLauncher launcher) {
+            return ((SimulatedLauncher) launcher).host;
+        }
+
+        @Override
+        public int getPort(@Nonnull ComputerLauncher launcher) {
+            return ((SimulatedLauncher) launcher).port;
+        }
+
+    }
+
+}
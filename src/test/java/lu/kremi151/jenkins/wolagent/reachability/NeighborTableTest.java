@@ -0,0 +1,168 @@
+/*
+ * Copyright 2019 Michel Kremer (kremi151)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package lu.kremi151.jenkins.wolagent.reachability;
+
+import org.junit.Test;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Parses the {@code /proc/net/arp} fixtures in {@code src/test/resources}, which keep their exact whitespace
+ * and line endings.
+ */
+public class NeighborTableTest {
+
+    @Test
+    public void headerOnly() throws IOException {
+        assertEquals(0, parse("header-only").size());
+    }
+
+    @Test
+    public void completeAndIncompleteEntries() throws IOException {
+        final NeighborTable.Snapshot snapshot = parse("mixed");
+        assertEquals(5, snapshot.size());
+
+        final NeighborTable.Entry gateway = snapshot.getByMac("aa:bb:cc:00:00:01");
+        assertNotNull(gateway);
+        assertEquals("192.168.1.1", gateway.getAddress());
+        assertEquals(0x2, gateway.getFlags());
+        assertEquals("eth0", gateway.getDevice());
+
+        // Permanent entries carry the complete flag as well
+        assertNotNull(snapshot.getByMac("52-54-00-12-34-57"));
+
+        final NeighborTable.Entry unresolved = snapshot.getByAddress("192.168.1.20");
+        assertNotNull(unresolved);
+        assertFalse(unresolved.isComplete());
+        assertNull(snapshot.getByMac("00:00:00:00:00:00"));
+
+        // Without the complete flag, a MAC address left over from an earlier resolution does not count
+        assertFalse(snapshot.getByAddress("10.0.0.5").isComplete());
+        assertNull(snapshot.getByMac("52:54:00:12:34:58"));
+    }
+
+    @Test
+    public void states() throws IOException {
+        final NeighborTable.Snapshot snapshot = parse("mixed");
+        assertEquals(NeighborTable.State.UP, snapshot.getState("52:54:00:12:34:56", null));
+        assertEquals(NeighborTable.State.DOWN, snapshot.getState("52:54:00:00:00:20", InetAddress.getByName("192.168.1.20")));
+        assertEquals(NeighborTable.State.DOWN, snapshot.getState("52:54:00:12:34:58", InetAddress.getByName("10.0.0.5")));
+        // The address belongs to another machine now
+        assertEquals(NeighborTable.State.UNKNOWN, snapshot.getState("52:54:00:00:00:21", InetAddress.getByName("192.168.1.21")));
+        assertEquals(NeighborTable.State.UNKNOWN, snapshot.getState("52:54:00:00:00:30", InetAddress.getByName("192.168.1.30")));
+        assertEquals(NeighborTable.State.UNKNOWN, snapshot.getState("52:54:00:00:00:20", null));
+    }
+
+    @Test
+    public void tabs() throws IOException {
+        final NeighborTable.Snapshot snapshot = parse("tabs");
+        assertEquals(2, snapshot.size());
+        assertEquals("192.168.1.21", snapshot.getByMac("52:54:00:12:34:56").getAddress());
+        assertEquals("eth0", snapshot.getByAddress("192.168.1.20").getDevice());
+    }
+
+    @Test
+    public void crlf() throws IOException {
+        final NeighborTable.Snapshot snapshot = parse("crlf");
+        assertEquals(2, snapshot.size());
+        assertEquals("eth0", snapshot.getByMac("52:54:00:12:34:56").getDevice());
+        assertFalse(snapshot.getByAddress("192.168.1.20").isComplete());
+    }
+
+    @Test
+    public void missingTrailingNewline() throws IOException {
+        final NeighborTable.Snapshot snapshot = parse("no-trailing-newline");
+        assertEquals(2, snapshot.size());
+        final NeighborTable.Entry last = snapshot.getByMac("52:54:00:12:34:56");
+        assertNotNull(last);
+        assertEquals("eth0", last.getDevice());
+    }
+
+    @Test
+    public void linesSplitAcrossReads() throws IOException {
+        final NeighborTable.Snapshot snapshot;
+        try (Reader reader = new SingleCharReader(open("mixed"))) {
+            snapshot = NeighborTable.parse(reader);
+        }
+        assertEquals(5, snapshot.size());
+        assertNotNull(snapshot.getByMac("aa:bb:cc:00:00:01"));
+    }
+
+    @Test
+    public void readsFromPath() throws Exception {
+        final Path path = Paths.get(NeighborTableTest.class.getResource("arp/mixed").toURI());
+        final NeighborTable table = new NeighborTable(path, 1000L);
+        assertTrue(table.isAvailable());
+        assertEquals(NeighborTable.State.DOWN, table.getState("52:54:00:00:00:20", InetAddress.getByName("192.168.1.20")));
+        assertFalse(new NeighborTable(path.resolveSibling("missing"), 1000L).isAvailable());
+        assertEquals(NeighborTable.State.UNKNOWN,
+                new NeighborTable(path.resolveSibling("missing"), 1000L).getState("52:54:00:00:00:20", InetAddress.getByName("192.168.1.20")));
+    }
+
+    @Test
+    public void packMac() {
+        assertEquals(0x525400123456L, NeighborTable.packMac("52:54:00:12:34:56"));
+        assertEquals(0x525400123456L, NeighborTable.packMac("52-54-00-12-34-56"));
+        assertEquals(0x525400123456L, NeighborTable.packMac("525400123456"));
+        assertEquals(-1L, NeighborTable.packMac("52:54:00:12:34"));
+        assertEquals(-1L, NeighborTable.packMac("5:254:00:12:34:56"));
+        assertEquals(-1L, NeighborTable.packMac("52:54:00:12:34:56:78"));
+    }
+
+    private static NeighborTable.Snapshot parse(String fixture) throws IOException {
+        try (Reader reader = open(fixture)) {
+            return NeighborTable.parse(reader);
+        }
+    }
+
+    private static Reader open(String fixture) {
+        final InputStream in = NeighborTableTest.class.getResourceAsStream("arp/" + fixture);
+        assertNotNull("Missing fixture " + fixture, in);
+        return new InputStreamReader(in, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Hands out one character per read, so every line spans several reads.
+     */
+    private static final class SingleCharReader extends FilterReader {
+
+        private SingleCharReader(Reader in) {
+            super(in);
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            return super.read(buffer, offset, Math.min(1, length));
+        }
+
+    }
+
+}
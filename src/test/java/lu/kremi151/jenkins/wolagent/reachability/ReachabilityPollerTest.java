@@ -0,0 +1,105 @@
+/*
+ * Copyright 2019 Michel Kremer (kremi151)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package lu.kremi151.jenkins.wolagent.reachability;
+
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Polls many nodes at once through checks blocking like ICMP does, and makes sure every node still gets checked
+ * about every ping interval.
+ */
+public class ReachabilityPollerTest {
+
+    private static final int NODES = Integer.getInteger(ReachabilityPollerTest.class.getName() + ".nodes", 80);
+    private static final int PING_INTERVAL = 100;
+    private static final long BLOCK_MILLIS = 50L;
+
+    @Test
+    public void blockingChecksKeepTheirSpacingUnderLoad() throws Exception {
+        final List<BlockingCheck> checks = new ArrayList<>();
+        final List<CompletableFuture<Void>> polls = new ArrayList<>();
+        for (int i = 0; i < NODES; i++) {
+            final BlockingCheck check = new BlockingCheck();
+            checks.add(check);
+            polls.add(ReachabilityPoller.get().awaitReachable("node-" + i, check, PING_INTERVAL, 3000L));
+        }
+        for (CompletableFuture<Void> poll : polls) {
+            try {
+                poll.get();
+            } catch (ExecutionException e) {
+                // No check ever succeeds, so every poll times out
+                assertTrue(e.getCause() instanceof TimeoutException);
+            }
+        }
+
+        final long expected = PING_INTERVAL + BLOCK_MILLIS;
+        long worst = 0L;
+        for (BlockingCheck check : checks) {
+            worst = Math.max(worst, check.getMeanSpacingMillis());
+        }
+        assertTrue("Nodes were checked only every " + worst + " ms instead of every " + expected + " ms",
+                worst <= 2 * expected);
+    }
+
+    private static final class BlockingCheck implements ReachabilityCheck {
+
+        private final List<Long> attempts = new ArrayList<>();
+
+        @Nonnull
+        @Override
+        public CompletableFuture<Boolean> attempt(@Nonnull ScheduledExecutorService executor) {
+            return CompletableFuture.supplyAsync(() -> {
+                synchronized (attempts) {
+                    attempts.add(System.nanoTime());
+                }
+                try {
+                    Thread.sleep(BLOCK_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return false;
+            }, executor);
+        }
+
+        @Override
+        public boolean isBlocking() {
+            return true;
+        }
+
+        private long getMeanSpacingMillis() {
+            synchronized (attempts) {
+                if (attempts.size() < 2) {
+                    return Long.MAX_VALUE;
+                }
+                return TimeUnit.NANOSECONDS.toMillis(attempts.get(attempts.size() - 1) - attempts.get(0)) / (attempts.size() - 1);
+            }
+        }
+
+    }
+
+}
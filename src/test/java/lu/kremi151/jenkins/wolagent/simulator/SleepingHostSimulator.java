@@ -0,0 +1,360 @@
+/*
+ * Copyright 2019 Michel Kremer (kremi151)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package lu.kremi151.jenkins.wolagent.simulator;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nonnull;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Fake sleeping hosts on the loopback interface. Magic packets are received on a single UDP port, and a host
+ * "boots" a configurable delay after receiving a valid packet for its MAC address by starting to listen on its TCP port.
+ * Until then, connections to that port are refused, just like for a machine which is still powered off.
+ * A single selector thread serves the UDP port and accepts and closes all TCP connections.
+ */
+public final class SleepingHostSimulator implements Closeable {
+
+    private static final Logger LOGGER = java.util.logging.Logger.getLogger(SleepingHostSimulator.class.getName());
+
+    private static final int MAC_LENGTH = 6;
+    private static final int PAYLOAD_LENGTH = MAC_LENGTH + 16 * MAC_LENGTH;
+
+    private final InetAddress address = InetAddress.getLoopbackAddress();
+    private final long bootDelayMillis;
+
+    private final Map<String, SimulatedHost> hosts = new ConcurrentHashMap<>();
+    // Channels are only (de)registered on the selector thread, doing so from other threads would block on select()
+    private final Queue<Runnable> selectorTasks = new ConcurrentLinkedQueue<>();
+
+    private final Selector selector;
+    private final DatagramChannel udp;
+    private final ScheduledExecutorService bootTimer;
+    private final Thread selectorThread;
+
+    private final AtomicLong validPackets = new AtomicLong();
+    private final AtomicLong invalidPackets = new AtomicLong();
+
+    private volatile boolean closed;
+
+    public SleepingHostSimulator(long bootDelayMillis) throws IOException {
+        this.bootDelayMillis = bootDelayMillis;
+        this.selector = Selector.open();
+        this.udp = DatagramChannel.open();
+        this.udp.bind(new InetSocketAddress(address, 0));
+        this.udp.configureBlocking(false);
+        this.udp.register(selector, SelectionKey.OP_READ);
+        this.bootTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "SleepingHostSimulator.bootTimer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.selectorThread = new Thread(this::runSelector, "SleepingHostSimulator.selector");
+        this.selectorThread.setDaemon(true);
+        this.selectorThread.start();
+    }
+
+    /**
+     * Adds a sleeping host. Its TCP port is reserved right away but refuses connections until the host is woken up.
+     *
+     * @param macAddress MAC address in the form {@code 01:23:45:67:89:ab}
+     * @param bootable   whether the host boots at all, hosts which never boot simulate broken hardware
+     */
+    @Nonnull
+    public SimulatedHost addHost(@Nonnull String macAddress, boolean bootable) throws IOException {
+        final SimulatedHost host = new SimulatedHost(macAddress.toLowerCase(Locale.ROOT), bootable);
+        if (hosts.putIfAbsent(host.macAddress, host) != null) {
+            host.close();
+            throw new IllegalArgumentException("Duplicate MAC address " + macAddress);
+        }
+        return host;
+    }
+
+    /**
+     * @return the address magic packets have to be sent to
+     */
+    @Nonnull
+    public InetSocketAddress getWakeAddress() throws IOException {
+        return (InetSocketAddress) udp.getLocalAddress();
+    }
+
+    @Nonnull
+    public InetAddress getAddress() {
+        return address;
+    }
+
+    public long getValidPackets() {
+        return validPackets.get();
+    }
+
+    public long getInvalidPackets() {
+        return invalidPackets.get();
+    }
+
+    private void runSelector() {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(1024);
+        while (!closed) {
+            try {
+                selector.select();
+                Runnable task;
+                while ((task = selectorTasks.poll()) != null) {
+                    task.run();
+                }
+                final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    final SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.channel() == udp) {
+                        buffer.clear();
+                        while (udp.receive(buffer) != null) {
+                            buffer.flip();
+                            onPacket(buffer);
+                            buffer.clear();
+                        }
+                    } else if (key.isAcceptable()) {
+                        SocketChannel accepted;
+                        while ((accepted = ((ServerSocketChannel) key.channel()).accept()) != null) {
+                            accepted.close();
+                        }
+                    }
+                }
+            } catch (ClosedSelectorException e) {
+                return;
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Simulator selector failed", e);
+            }
+        }
+    }
+
+    private CompletableFuture<Void> onSelectorThread(IoTask task) {
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+        selectorTasks.add(() -> {
+            try {
+                task.run();
+                result.complete(null);
+            } catch (IOException | RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        selector.wakeup();
+        return result;
+    }
+
+    private void onPacket(ByteBuffer packet) {
+        final String macAddress = parsePayload(packet);
+        if (macAddress == null) {
+            invalidPackets.incrementAndGet();
+            return;
+        }
+        validPackets.incrementAndGet();
+        final SimulatedHost host = hosts.get(macAddress);
+        if (host != null) {
+            host.wake();
+        }
+    }
+
+    /**
+     * @return the MAC address the payload wakes up, or {@code null} if it is not a valid magic packet
+     */
+    @CheckForNull
+    static String parsePayload(ByteBuffer packet) {
+        final int length = packet.remaining();
+        // SecureOn passwords of 4 or 6 bytes may follow the MAC repetitions, they are accepted but not checked
+        if (length != PAYLOAD_LENGTH && length != PAYLOAD_LENGTH + 4 && length != PAYLOAD_LENGTH + 6) {
+            return null;
+        }
+        final int start = packet.position();
+        for (int i = 0; i < MAC_LENGTH; i++) {
+            if (packet.get(start + i) != (byte) 0xff) {
+                return null;
+            }
+        }
+        for (int repetition = 1; repetition < 16; repetition++) {
+            for (int i = 0; i < MAC_LENGTH; i++) {
+                if (packet.get(start + MAC_LENGTH + i) != packet.get(start + MAC_LENGTH * (repetition + 1) + i)) {
+                    return null;
+                }
+            }
+        }
+        final StringBuilder sb = new StringBuilder(MAC_LENGTH * 3 - 1);
+        for (int i = 0; i < MAC_LENGTH; i++) {
+            if (i > 0) {
+                sb.append(':');
+            }
+            sb.append(String.format("%02x", packet.get(start + MAC_LENGTH + i) & 0xff));
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        bootTimer.shutdownNow();
+        selector.close();
+        udp.close();
+        for (SimulatedHost host : hosts.values()) {
+            host.close();
+        }
+        try {
+            selectorThread.join(1000L);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private interface IoTask {
+        void run() throws IOException;
+    }
+
+    public final class SimulatedHost implements Closeable {
+
+        private final String macAddress;
+        private final boolean bootable;
+        private final int port;
+
+        // Keeps the port bound without listening, so connections are refused while the host sleeps
+        private Socket reservation;
+        private ServerSocketChannel server;
+        private ScheduledFuture<?> boot;
+
+        private volatile long wokenAtNanos;
+        private volatile long bootedAtNanos;
+
+        private SimulatedHost(String macAddress, boolean bootable) throws IOException {
+            this.macAddress = macAddress;
+            this.bootable = bootable;
+            this.reservation = new Socket();
+            this.reservation.setReuseAddress(true);
+            this.reservation.bind(new InetSocketAddress(address, 0));
+            this.port = reservation.getLocalPort();
+        }
+
+        public String getMacAddress() {
+            return macAddress;
+        }
+
+        public int getPort() {
+            return port;
+        }
+
+        public boolean isAwake() {
+            return bootedAtNanos != 0L;
+        }
+
+        /**
+         * @return nanoseconds between the first valid magic packet and the host accepting connections, or {@code -1}
+         */
+        public long getBootNanos() {
+            return isAwake() ? bootedAtNanos - wokenAtNanos : -1L;
+        }
+
+        private synchronized void wake() {
+            if (!bootable || wokenAtNanos != 0L) {
+                return;
+            }
+            wokenAtNanos = System.nanoTime();
+            boot = bootTimer.schedule(() -> onSelectorThread(this::listen), bootDelayMillis, TimeUnit.MILLISECONDS);
+        }
+
+        private synchronized void listen() throws IOException {
+            if (reservation == null || wokenAtNanos == 0L) {
+                return;
+            }
+            reservation.close();
+            reservation = null;
+            server = ServerSocketChannel.open();
+            server.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            server.bind(new InetSocketAddress(address, port), 128);
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+            bootedAtNanos = System.nanoTime();
+        }
+
+        /**
+         * Powers the host off again, it refuses connections until it is woken up once more.
+         */
+        public void sleep() throws IOException {
+            synchronized (this) {
+                if (boot != null) {
+                    boot.cancel(false);
+                    boot = null;
+                }
+                wokenAtNanos = 0L;
+                bootedAtNanos = 0L;
+            }
+            try {
+                onSelectorThread(this::unlisten).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while putting " + this + " to sleep", e);
+            } catch (ExecutionException e) {
+                throw new IOException("Unable to put " + this + " to sleep", e.getCause());
+            }
+        }
+
+        private synchronized void unlisten() throws IOException {
+            if (server != null) {
+                server.close();
+                server = null;
+                // The socket of a registered channel is only released once its key has been flushed
+                selector.selectNow();
+            }
+            if (reservation == null) {
+                reservation = new Socket();
+                reservation.setReuseAddress(true);
+                reservation.bind(new InetSocketAddress(address, port));
+            }
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (boot != null) {
+                boot.cancel(false);
+            }
+            if (server != null) {
+                server.close();
+            }
+            if (reservation != null) {
+                reservation.close();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return macAddress + "@" + address.getHostAddress() + ":" + port;
+        }
+
+    }
+
+}